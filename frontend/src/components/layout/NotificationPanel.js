@@ -34,6 +34,7 @@ const getNotificationIcon = (type) => {
     case 'LECTURE_STATUS_CHANGED':
       return <EventNoteIcon color="info" />;
     case 'NEW_COMMENT':
+    case 'COMMENT_DIGEST':
       return <CommentIcon color="secondary" />;
     case 'STATS_UPDATED':
       return <AssessmentIcon color="success" />;
@@ -68,6 +69,7 @@ const NotificationPanel = ({ open, onClose }) => {
         navigate(`/lectures/${notification.lectureId}`);
         break;
       case 'NEW_COMMENT':
+      case 'COMMENT_DIGEST':
         navigate(`/question/${notification.questionId}`);
         break;
       case 'STATS_UPDATED':
@@ -91,6 +93,17 @@ const NotificationPanel = ({ open, onClose }) => {
         return `讲座状态已更新为：${notification.status}`;
       case 'NEW_COMMENT':
         return `${notification.commenterName} 发表了新评论`;
+      case 'COMMENT_DIGEST': {
+        // 评论按时间窗口合并推送，comments 中每条带有评论者 username
+        const comments = notification.comments || [];
+        if (comments.length === 0) {
+          return '收到新评论';
+        }
+        if (comments.length === 1) {
+          return `${comments[0].username} 发表了新评论`;
+        }
+        return `${comments[0].username} 等人发表了 ${comments.length} 条新评论`;
+      }
       case 'STATS_UPDATED':
         return '测验统计信息已更新';
       case 'CONNECT_SUCCESS':
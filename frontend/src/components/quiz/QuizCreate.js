@@ -37,6 +37,7 @@ const QuizCreate = () => {
     timeLimit: 30
   });
   const [questions, setQuestions] = useState([]);
+  const [previewId, setPreviewId] = useState(null);
   const [errors, setErrors] = useState({});
   const [loading, setLoading] = useState(false);
   const [generating, setGenerating] = useState(false);
@@ -111,6 +112,7 @@ const QuizCreate = () => {
           }
       );
       setQuestions(res.data);
+      setPreviewId(res.headers['x-preview-id'] || null);
       setErrors({});
     } catch (e) {
       console.error(e);
@@ -130,6 +132,7 @@ const QuizCreate = () => {
         questionCount: formData.questionCount,
         difficultyLevel: formData.difficultyLevel,
         timeLimit: formData.timeLimit,
+        previewId,
         questions: questions.map(q => ({
           content: q.content,
           explanation: q.explanation,
@@ -71,8 +71,12 @@ const QuizPlay = () => {
         });
         setSelectedOptions(initialSelectedOptions);
         
-        // 设置倒计时
-        if (quizData.expiresAt) {
+        // 设置倒计时，优先使用服务器计算的剩余时间，避免本地时钟偏差
+        if (quizData.remainingMs != null) {
+          const remainingTime = Math.max(0, Math.floor(quizData.remainingMs / 1000));
+          setTimeLeft(remainingTime);
+          startTimer(remainingTime);
+        } else if (quizData.expiresAt) {
           const expiryTime = new Date(quizData.expiresAt).getTime();
           const now = new Date().getTime();
           const remainingTime = Math.max(0, Math.floor((expiryTime - now) / 1000));
@@ -11,13 +11,16 @@ class WebSocketService {
     this.reconnectTimeout = null;
     this.reconnectAttempts = 0;
     this.maxReconnectAttempts = 5;
+    this.useSockJS = false; // 原生WebSocket不可用时回退到SockJS
   }
 
   init() {
     if (this.connected || this.stompClient?.connected) return;
 
     try {
-      this.stompClient = Stomp.over(() => new SockJS('http://localhost:8080/ws'));
+      this.stompClient = Stomp.over(() => this.useSockJS
+          ? new SockJS('http://localhost:8080/ws')
+          : new WebSocket('ws://localhost:8080/ws-native'));
       this.stompClient.debug = () => {};
       const token = getAuthToken();
 
@@ -46,6 +49,10 @@ class WebSocketService {
 
   onError(error) {
     console.error('❌ WebSocket连接错误:', error);
+    if (!this.connected && !this.useSockJS) {
+      // 原生连接握手失败（代理不支持等），改用SockJS
+      this.useSockJS = true;
+    }
     this.connected = false;
     this.stompClient = null;
     this.scheduleReconnect();
@@ -3,6 +3,10 @@
 -- USE popquiz;
 
 -- 1. 删除所有表（防止重复导入报错）
+DROP TABLE IF EXISTS scheduler_locks;
+DROP TABLE IF EXISTS content_blobs;
+DROP TABLE IF EXISTS content_segments;
+DROP TABLE IF EXISTS question_sources;
 DROP TABLE IF EXISTS user_response_options;
 DROP TABLE IF EXISTS user_responses;
 DROP TABLE IF EXISTS options;
@@ -82,6 +86,9 @@ CREATE TABLE `lectures` (
     `access_code` VARCHAR(255),
     `quiz_interval` INT NOT NULL DEFAULT 10,
     `auto_generate_quiz` BOOLEAN NOT NULL DEFAULT TRUE,
+    `auto_quiz_boundary` INT NOT NULL DEFAULT 0,
+    `auto_quiz_id` BIGINT,
+    `data_version` BIGINT NOT NULL DEFAULT 0,
     `created_at` TIMESTAMP,
     `updated_at` TIMESTAMP,
     CONSTRAINT `fk_lectures_organizer` FOREIGN KEY (`organizer_id`) REFERENCES `user` (`id`),
@@ -108,13 +115,24 @@ CREATE TABLE `contents` (
     `original_filename` VARCHAR(255),
     `mime_type` VARCHAR(255),
     `file_size` BIGINT,
+    `content_hash` VARCHAR(64),
     `process_status` VARCHAR(20) NOT NULL,
     `extracted_text` TEXT,
+    `segment_count` INT,
+    `text_length` BIGINT,
+    `clean_text_length` BIGINT,
+    `revision_file_path` VARCHAR(255),
+    `revision_original_filename` VARCHAR(255),
+    `revision_mime_type` VARCHAR(255),
+    `revision_file_size` BIGINT,
+    `revision_content_hash` VARCHAR(64),
+    `revision_type` VARCHAR(20),
     `error_message` VARCHAR(255),
     `created_at` TIMESTAMP,
     `updated_at` TIMESTAMP,
     `process_start_time` TIMESTAMP,
     `process_end_time` TIMESTAMP,
+    KEY `idx_contents_hash` (`content_hash`),
     CONSTRAINT `fk_contents_lecture` FOREIGN KEY (`lecture_id`) REFERENCES `lectures` (`id`) ON DELETE CASCADE
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
 
@@ -142,6 +160,7 @@ CREATE TABLE `questions` (
     `explanation` VARCHAR(255),
     `difficulty_level` INT NOT NULL DEFAULT 2,
     `created_at` TIMESTAMP,
+    `stale` BOOLEAN DEFAULT FALSE,
     CONSTRAINT `fk_questions_quiz` FOREIGN KEY (`quiz_id`) REFERENCES `quiz` (`id`) ON DELETE CASCADE
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
 
@@ -210,6 +229,49 @@ CREATE TABLE `discussion_comments` (
     CONSTRAINT `fk_discussion_comments_parent` FOREIGN KEY (`parent_id`) REFERENCES `discussion_comments` (`id`) ON DELETE SET NULL
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
 
+-- 17. 定时任务锁表
+CREATE TABLE `scheduler_locks` (
+    `name` VARCHAR(64) PRIMARY KEY,
+    `owner` VARCHAR(255) NOT NULL,
+    `locked_until` TIMESTAMP(3) NOT NULL,
+    `locked_at` TIMESTAMP(3) NOT NULL
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
+
+-- 18. 上传文件表（按内容哈希去重）
+CREATE TABLE `content_blobs` (
+    `hash` VARCHAR(64) PRIMARY KEY,
+    `file_path` VARCHAR(255) NOT NULL,
+    `file_size` BIGINT NOT NULL,
+    `ref_count` INT NOT NULL,
+    `created_at` TIMESTAMP
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
+
+-- 19. 内容分段表
+CREATE TABLE `content_segments` (
+    `id` BIGINT PRIMARY KEY AUTO_INCREMENT,
+    `content_id` BIGINT NOT NULL,
+    `sequence_number` INT NOT NULL,
+    `kind` VARCHAR(20) NOT NULL,
+    `source_index` INT NOT NULL,
+    `char_offset` BIGINT NOT NULL,
+    `char_length` INT NOT NULL,
+    `text` MEDIUMTEXT NOT NULL,
+    `clean_text` MEDIUMTEXT,
+    `fingerprint` VARCHAR(64),
+    KEY `idx_segments_content_seq` (`content_id`, `sequence_number`),
+    CONSTRAINT `fk_segments_content` FOREIGN KEY (`content_id`) REFERENCES `contents` (`id`) ON DELETE CASCADE
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
+
+-- 20. 题目来源分段表
+CREATE TABLE `question_sources` (
+    `question_id` BIGINT NOT NULL,
+    `content_id` BIGINT NOT NULL,
+    `sequence_number` INT NOT NULL,
+    `fingerprint` VARCHAR(64) NOT NULL,
+    KEY `idx_question_sources_fingerprint` (`content_id`, `fingerprint`),
+    CONSTRAINT `fk_question_sources_question` FOREIGN KEY (`question_id`) REFERENCES `questions` (`id`) ON DELETE CASCADE
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
+
 -- 插入初始角色
 INSERT INTO `role` (`name`) VALUES ('ROLE_ADMIN'),('ROLE_ORGANIZER'),('ROLE_SPEAKER'),('ROLE_USER');
 
@@ -1,154 +1,254 @@
-package com.popquiz.ai;
-
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ArrayNode;
-import com.fasterxml.jackson.databind.node.ObjectNode;
-
-import okhttp3.*;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-import org.springframework.beans.factory.annotation.Value;
-import org.springframework.stereotype.Service;
-
-import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.concurrent.TimeUnit;
-
-@Service
-public class HuggingFaceService {
-
-    private static final Logger logger = LoggerFactory.getLogger(HuggingFaceService.class);
-    private static final MediaType JSON = MediaType.parse("application/json; charset=utf-8");
-    private final OkHttpClient client;
-    private final ObjectMapper objectMapper;
-
-    @Value("${huggingface.api-token}")
-    private String apiToken;
-
-    @Value("${huggingface.model-endpoint}")
-    private String modelEndpoint;
-
-    @Value("${huggingface.model-name}")
-    private String modelName;
-
-    public HuggingFaceService() {
-        this.client = new OkHttpClient.Builder()
-                .connectTimeout(120, TimeUnit.SECONDS)
-                .readTimeout(120, TimeUnit.SECONDS)
-                .writeTimeout(120, TimeUnit.SECONDS)
-                .build();
-        this.objectMapper = new ObjectMapper();
-    }
-
-    public List<QuizQuestion> generateQuizQuestions(String content, int numQuestions, int difficultyLevel) {
-        try {
-            String response = callDeepSeekAPI(content, numQuestions, difficultyLevel);
-            return parseDeepSeekResponse(response);
-        } catch (Exception e) {
-            logger.error("生成测验问题时出错", e);
-            throw new RuntimeException("无法生成测验问题", e);
-        }
-    }
-
-    private String callDeepSeekAPI(String content, int numQuestions, int difficultyLevel) throws IOException {
-        ObjectNode root = objectMapper.createObjectNode();
-        root.put("model", modelName);
-
-        ArrayNode messages = objectMapper.createArrayNode();
-
-        // system prompt
-        messages.add(objectMapper.createObjectNode()
-                .put("role", "system")
-                .put("content", "你是一个专业的教育专家，擅长创建高质量的测验题目。请严格按照JSON格式输出，不要多余解释。"));
-
-        // user prompt，多行文本块，更易读，易于LLM解析
-        messages.add(objectMapper.createObjectNode()
-                .put("role", "user")
-                .put("content", String.format("""
-                        请根据以下内容生成%d道单选题，每题4个选项，难度%d，内容如下：
-
-                        %s
-
-                        输出严格的 JSON，结构如下：
-                        {
-                          "questions": [
-                            {
-                              "content": "问题内容",
-                              "options": [
-                                {"label": "A", "content": "选项A内容", "isCorrect": false},
-                                {"label": "B", "content": "选项B内容", "isCorrect": false},
-                                {"label": "C", "content": "选项C内容", "isCorrect": true},
-                                {"label": "D", "content": "选项D内容", "isCorrect": false}
-                              ],
-                              "explanation": "问题解释和答案分析"
-                            }
-                          ]
-                        }
-
-                        重要要求：
-                        1. 输出必须严格符合上述 JSON 结构，不要输出多余内容，不要加任何注释或解释。
-                        2. 每题只有一个正确答案（isCorrect为true）。
-                        3. 问题和选项内容请务必与输入内容相关。
-                        """, numQuestions, difficultyLevel, content)));
-
-        root.set("messages", messages);
-        root.put("temperature", 0.7);
-
-        Request request = new Request.Builder()
-                .url(modelEndpoint)
-                .addHeader("Authorization", "Bearer " + apiToken)
-                .addHeader("Content-Type", "application/json")
-                .post(RequestBody.create(root.toString(), JSON))
-                .build();
-
-        try (Response response = client.newCall(request).execute()) {
-            if (!response.isSuccessful()) {
-                throw new IOException("API调用失败: " + response);
-            }
-            return response.body().string();
-        }
-    }
-
-    private List<QuizQuestion> parseDeepSeekResponse(String response) throws IOException {
-        JsonNode rootNode = objectMapper.readTree(response);
-        String content = rootNode.get("choices").get(0).get("message").get("content").asText();
-
-        // 输出 LLM 原始返回，便于调试
-        logger.info("DeepSeek LLM 返回内容：\n{}", content);
-
-        int startIndex = content.indexOf("{");
-        int endIndex = content.lastIndexOf("}") + 1;
-        if (startIndex == -1 || endIndex <= startIndex) {
-            throw new IOException("无法从响应中提取JSON, 原始内容: " + content);
-        }
-
-        String jsonStr = content.substring(startIndex, endIndex);
-        JsonNode questionsNode = objectMapper.readTree(jsonStr);
-
-        List<QuizQuestion> quizQuestions = new ArrayList<>();
-        if (questionsNode.has("questions")) {
-            ArrayNode questionsArray = (ArrayNode) questionsNode.get("questions");
-            for (JsonNode questionNode : questionsArray) {
-                QuizQuestion question = new QuizQuestion();
-                question.setContent(questionNode.get("content").asText());
-                question.setExplanation(questionNode.get("explanation").asText());
-
-                List<QuizOption> options = new ArrayList<>();
-                ArrayNode optionsArray = (ArrayNode) questionNode.get("options");
-                for (JsonNode optionNode : optionsArray) {
-                    QuizOption option = new QuizOption();
-                    option.setLabel(optionNode.get("label").asText().charAt(0));
-                    option.setContent(optionNode.get("content").asText());
-                    option.setCorrect(optionNode.get("isCorrect").asBoolean());
-                    options.add(option);
-                }
-                question.setOptions(options);
-                quizQuestions.add(question);
-            }
-        }
-
-        return quizQuestions;
-    }
-}
+package com.popquiz.ai;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import okhttp3.*;
+import okio.BufferedSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
+
+@Service
+public class HuggingFaceService {
+
+    private static final Logger logger = LoggerFactory.getLogger(HuggingFaceService.class);
+    private static final MediaType JSON = MediaType.parse("application/json; charset=utf-8");
+    private final LlmClient llmClient;
+    private final ObjectMapper objectMapper;
+
+    @Value("${huggingface.api-token}")
+    private String apiToken;
+
+    @Value("${huggingface.model-endpoint}")
+    private String modelEndpoint;
+
+    @Value("${huggingface.model-name}")
+    private String modelName;
+
+    // 以流式方式请求模型，题目一生成完整就回调，不必等待整个响应
+    @Value("${huggingface.stream:true}")
+    private boolean stream;
+
+    public HuggingFaceService(LlmClient llmClient) {
+        this.llmClient = llmClient;
+        this.objectMapper = new ObjectMapper();
+    }
+
+    public String getModelName() {
+        return modelName;
+    }
+
+    public List<QuizQuestion> generateQuizQuestions(String content, int numQuestions, int difficultyLevel) {
+        return generateQuizQuestions(content, numQuestions, difficultyLevel, null);
+    }
+
+    /**
+     * 同步生成题目，等待异步调用完成；新代码优先使用 generateQuizQuestionsAsync
+     */
+    public List<QuizQuestion> generateQuizQuestions(String content, int numQuestions, int difficultyLevel,
+                                                    Consumer<QuizQuestion> listener) {
+        return LlmClient.await(generateQuizQuestionsAsync(content, numQuestions, difficultyLevel, listener));
+    }
+
+    /**
+     * 异步生成题目，每道题完整解析后立即交给listener（可为null）；
+     * 关闭流式模式时在整个响应返回后依次回调
+     */
+    public CompletableFuture<List<QuizQuestion>> generateQuizQuestionsAsync(String content, int numQuestions,
+                                                                           int difficultyLevel,
+                                                                           Consumer<QuizQuestion> listener) {
+        Request request = buildRequest(content, numQuestions, difficultyLevel, stream);
+        CompletableFuture<List<QuizQuestion>> future = llmClient.execute(request, response -> stream
+                ? readStream(response, listener)
+                : readResponse(response, listener));
+        CompletableFuture<List<QuizQuestion>> result = future.handle((questions, error) -> {
+            if (error == null) {
+                return questions;
+            }
+            Throwable cause = error instanceof CompletionException && error.getCause() != null
+                    ? error.getCause() : error;
+            logger.error("生成测验问题时出错", cause);
+            throw new RuntimeException("无法生成测验问题: " + cause.getMessage(), cause);
+        });
+        // 取消返回的future时取消进行中的请求
+        result.whenComplete((questions, error) -> {
+            if (result.isCancelled()) {
+                future.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    private List<QuizQuestion> readResponse(Response response, Consumer<QuizQuestion> listener) throws IOException {
+        List<QuizQuestion> questions = parseDeepSeekResponse(response.body().string());
+        notifyAll(questions, listener);
+        return questions;
+    }
+
+    /**
+     * 逐行读取SSE事件，把增量文本交给解析器，每闭合一个题目对象就解析并回调
+     */
+    private List<QuizQuestion> readStream(Response response, Consumer<QuizQuestion> listener) throws IOException {
+        MediaType contentType = response.body().contentType();
+        if (contentType == null || !"event-stream".equals(contentType.subtype())) {
+            // 接口不支持流式时按普通响应处理
+            return readResponse(response, listener);
+        }
+        StreamingQuestionParser parser = new StreamingQuestionParser();
+        List<QuizQuestion> questions = new ArrayList<>();
+        BufferedSource source = response.body().source();
+        String line;
+        while ((line = source.readUtf8Line()) != null) {
+            if (!line.startsWith("data:")) {
+                continue;
+            }
+            String data = line.substring(5).trim();
+            if ("[DONE]".equals(data)) {
+                break;
+            }
+            if (data.isEmpty()) {
+                continue;
+            }
+            JsonNode delta = objectMapper.readTree(data).path("choices").path(0).path("delta").path("content");
+            if (!delta.isTextual()) {
+                continue;
+            }
+            for (String questionJson : parser.append(delta.asText())) {
+                QuizQuestion question = toQuizQuestion(objectMapper.readTree(questionJson));
+                questions.add(question);
+                if (listener != null) {
+                    listener.accept(question);
+                }
+            }
+        }
+
+        logger.info("DeepSeek LLM 流式返回内容：\n{}", parser.getText());
+        if (questions.isEmpty()) {
+            // 增量解析没有得到题目（如输出格式有偏差）时按完整文本再解析一次
+            questions = parseQuestionsContent(parser.getText());
+            notifyAll(questions, listener);
+        }
+        return questions;
+    }
+
+    private void notifyAll(List<QuizQuestion> questions, Consumer<QuizQuestion> listener) {
+        if (listener != null) {
+            questions.forEach(listener);
+        }
+    }
+
+    private Request buildRequest(String content, int numQuestions, int difficultyLevel, boolean streaming) {
+        ObjectNode root = objectMapper.createObjectNode();
+        root.put("model", modelName);
+
+        ArrayNode messages = objectMapper.createArrayNode();
+
+        // system prompt
+        messages.add(objectMapper.createObjectNode()
+                .put("role", "system")
+                .put("content", "你是一个专业的教育专家，擅长创建高质量的测验题目。请严格按照JSON格式输出，不要多余解释。"));
+
+        // user prompt，多行文本块，更易读，易于LLM解析
+        messages.add(objectMapper.createObjectNode()
+                .put("role", "user")
+                .put("content", String.format("""
+                        请根据以下内容生成%d道单选题，每题4个选项，难度%d，内容如下：
+
+                        %s
+
+                        输出严格的 JSON，结构如下：
+                        {
+                          "questions": [
+                            {
+                              "content": "问题内容",
+                              "options": [
+                                {"label": "A", "content": "选项A内容", "isCorrect": false},
+                                {"label": "B", "content": "选项B内容", "isCorrect": false},
+                                {"label": "C", "content": "选项C内容", "isCorrect": true},
+                                {"label": "D", "content": "选项D内容", "isCorrect": false}
+                              ],
+                              "explanation": "问题解释和答案分析"
+                            }
+                          ]
+                        }
+
+                        重要要求：
+                        1. 输出必须严格符合上述 JSON 结构，不要输出多余内容，不要加任何注释或解释。
+                        2. 每题只有一个正确答案（isCorrect为true）。
+                        3. 问题和选项内容请务必与输入内容相关。
+                        """, numQuestions, difficultyLevel, content)));
+
+        root.set("messages", messages);
+        root.put("temperature", 0.7);
+        if (streaming) {
+            root.put("stream", true);
+        }
+
+        return new Request.Builder()
+                .url(modelEndpoint)
+                .addHeader("Authorization", "Bearer " + apiToken)
+                .addHeader("Content-Type", "application/json")
+                .addHeader("Accept", streaming ? "text/event-stream" : "application/json")
+                .post(RequestBody.create(root.toString(), JSON))
+                .build();
+    }
+
+    private List<QuizQuestion> parseDeepSeekResponse(String response) throws IOException {
+        JsonNode rootNode = objectMapper.readTree(response);
+        String content = rootNode.get("choices").get(0).get("message").get("content").asText();
+
+        // 输出 LLM 原始返回，便于调试
+        logger.info("DeepSeek LLM 返回内容：\n{}", content);
+        return parseQuestionsContent(content);
+    }
+
+    private List<QuizQuestion> parseQuestionsContent(String content) throws IOException {
+        int startIndex = content.indexOf("{");
+        int endIndex = content.lastIndexOf("}") + 1;
+        if (startIndex == -1 || endIndex <= startIndex) {
+            throw new IOException("无法从响应中提取JSON, 原始内容: " + content);
+        }
+
+        String jsonStr = content.substring(startIndex, endIndex);
+        JsonNode questionsNode = objectMapper.readTree(jsonStr);
+
+        List<QuizQuestion> quizQuestions = new ArrayList<>();
+        if (questionsNode.has("questions")) {
+            ArrayNode questionsArray = (ArrayNode) questionsNode.get("questions");
+            for (JsonNode questionNode : questionsArray) {
+                quizQuestions.add(toQuizQuestion(questionNode));
+            }
+        }
+
+        return quizQuestions;
+    }
+
+    private QuizQuestion toQuizQuestion(JsonNode questionNode) {
+        QuizQuestion question = new QuizQuestion();
+        question.setContent(questionNode.get("content").asText());
+        question.setExplanation(questionNode.get("explanation").asText());
+
+        List<QuizOption> options = new ArrayList<>();
+        ArrayNode optionsArray = (ArrayNode) questionNode.get("options");
+        for (JsonNode optionNode : optionsArray) {
+            QuizOption option = new QuizOption();
+            option.setLabel(optionNode.get("label").asText().charAt(0));
+            option.setContent(optionNode.get("content").asText());
+            option.setCorrect(optionNode.get("isCorrect").asBoolean());
+            options.add(option);
+        }
+        question.setOptions(options);
+        return question;
+    }
+}
@@ -0,0 +1,316 @@
+package com.popquiz.ai;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 大模型接口的异步HTTP客户端
+ * 请求通过OkHttp异步执行，调用方拿到CompletableFuture，不占用Tomcat线程等待；
+ * 每个服务商（按主机区分）限制并发数和排队数，429/5xx按带抖动的指数退避重试，
+ * 连续失败后熔断，熔断期间直接失败，过一段时间放行一个试探请求
+ */
+@Service
+public class LlmClient {
+
+    private static final Logger logger = LoggerFactory.getLogger(LlmClient.class);
+
+    private final OkHttpClient client;
+    private final ScheduledExecutorService retryScheduler;
+    private final MeterRegistry registry;
+    private final Map<String, Provider> providers = new ConcurrentHashMap<>();
+
+    // 每个服务商排队加执行中的请求上限，超出时直接拒绝
+    @Value("${huggingface.client.max-pending:32}")
+    private int maxPending;
+
+    @Value("${huggingface.client.max-retries:3}")
+    private int maxRetries;
+
+    @Value("${huggingface.client.retry-base-ms:500}")
+    private long retryBaseMs;
+
+    @Value("${huggingface.client.retry-max-ms:8000}")
+    private long retryMaxMs;
+
+    @Value("${huggingface.client.breaker.failure-threshold:5}")
+    private int breakerFailureThreshold;
+
+    @Value("${huggingface.client.breaker.open-ms:30000}")
+    private long breakerOpenMs;
+
+    public LlmClient(MeterRegistry registry,
+                     @Value("${huggingface.client.max-concurrency:4}") int maxConcurrency,
+                     @Value("${huggingface.client.pool.max-idle:8}") int poolMaxIdle,
+                     @Value("${huggingface.client.pool.keep-alive-ms:300000}") long poolKeepAliveMs,
+                     @Value("${huggingface.client.connect-timeout-ms:10000}") long connectTimeoutMs,
+                     @Value("${huggingface.client.read-timeout-ms:120000}") long readTimeoutMs) {
+        this.registry = registry;
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequestsPerHost(maxConcurrency);
+        dispatcher.setMaxRequests(Math.max(dispatcher.getMaxRequests(), maxConcurrency));
+        this.client = new OkHttpClient.Builder()
+                .dispatcher(dispatcher)
+                // 复用到同一服务商的连接，避免每次请求重新握手TLS
+                .connectionPool(new ConnectionPool(poolMaxIdle, poolKeepAliveMs, TimeUnit.MILLISECONDS))
+                .connectTimeout(connectTimeoutMs, TimeUnit.MILLISECONDS)
+                // 流式响应下为两次数据之间的最长等待
+                .readTimeout(readTimeoutMs, TimeUnit.MILLISECONDS)
+                .writeTimeout(connectTimeoutMs, TimeUnit.MILLISECONDS)
+                .build();
+        this.retryScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "llm-retry");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 处理成功响应的回调，在OkHttp的工作线程上执行，可以逐行读取流式响应
+     */
+    public interface ResponseHandler<T> {
+        T handle(Response response) throws IOException;
+    }
+
+    /**
+     * 异步执行请求；429/5xx和网络错误会自动重试，响应交给handler处理后完成future。
+     * 取消返回的future会同时取消进行中的请求
+     */
+    public <T> CompletableFuture<T> execute(Request request, ResponseHandler<T> handler) {
+        Provider provider = providers.computeIfAbsent(request.url().host(), this::newProvider);
+        CompletableFuture<T> result = new CompletableFuture<>();
+        if (!provider.pending.tryAcquire()) {
+            result.completeExceptionally(new RuntimeException("AI服务请求过多，请稍后重试"));
+            return result;
+        }
+        AtomicReference<Call> currentCall = new AtomicReference<>();
+        result.whenComplete((value, error) -> {
+            provider.pending.release();
+            Call call = currentCall.get();
+            if (result.isCancelled() && call != null) {
+                call.cancel();
+            }
+        });
+        attempt(provider, request, handler, 0, result, currentCall);
+        return result;
+    }
+
+    /**
+     * 同步等待future，把CompletionException还原为原始的运行时异常
+     */
+    public static <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new RuntimeException(cause != null ? cause.getMessage() : e.getMessage(), cause);
+        }
+    }
+
+    private <T> void attempt(Provider provider, Request request, ResponseHandler<T> handler, int attempt,
+                             CompletableFuture<T> result, AtomicReference<Call> currentCall) {
+        if (result.isDone()) {
+            return;
+        }
+        if (!provider.breaker.allowRequest()) {
+            result.completeExceptionally(new RuntimeException("AI服务暂时不可用，请稍后重试"));
+            return;
+        }
+        Call call = client.newCall(request);
+        currentCall.set(call);
+        call.enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                if (call.isCanceled()) {
+                    // 取消的试探请求不代表服务商的健康状况，让下一个请求接着试探
+                    provider.breaker.releaseTrial();
+                    return;
+                }
+                provider.breaker.recordFailure();
+                retryOrFail(provider, request, handler, attempt, result, currentCall, e, null);
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) {
+                try (response) {
+                    if (response.code() == 429 || response.code() >= 500) {
+                        provider.breaker.recordFailure();
+                        retryOrFail(provider, request, handler, attempt, result, currentCall,
+                                new IOException("API调用失败: " + response), retryAfterMs(response));
+                        return;
+                    }
+                    // 其他4xx是请求本身的问题，不计入服务商的健康状况
+                    provider.breaker.recordSuccess();
+                    if (!response.isSuccessful()) {
+                        result.completeExceptionally(new IOException("API调用失败: " + response));
+                        return;
+                    }
+                    result.complete(handler.handle(response));
+                } catch (Exception e) {
+                    result.completeExceptionally(e);
+                }
+            }
+        });
+    }
+
+    private <T> void retryOrFail(Provider provider, Request request, ResponseHandler<T> handler, int attempt,
+                                 CompletableFuture<T> result, AtomicReference<Call> currentCall,
+                                 IOException error, Long retryAfterMs) {
+        if (attempt >= maxRetries || result.isDone()) {
+            result.completeExceptionally(error);
+            return;
+        }
+        if (error instanceof InterruptedIOException && !isIdempotent(request)) {
+            // 读超时时服务端可能已在处理（并计费），POST不自动重发
+            result.completeExceptionally(error);
+            return;
+        }
+        // 全抖动：在 [0, min(上限, 基数*2^attempt)] 内随机等待，避免多个请求同时重试
+        long ceiling = Math.min(retryMaxMs, retryBaseMs << Math.min(attempt, 20));
+        long delay = retryAfterMs != null
+                ? Math.min(retryAfterMs, retryMaxMs)
+                : ThreadLocalRandom.current().nextLong(ceiling + 1);
+        logger.warn("AI接口调用失败，{}ms后第{}次重试: {}", delay, attempt + 1, error.getMessage());
+        registry.counter("llm.client.retries", "provider", request.url().host()).increment();
+        retryScheduler.schedule(() -> attempt(provider, request, handler, attempt + 1, result, currentCall),
+                delay, TimeUnit.MILLISECONDS);
+    }
+
+    private boolean isIdempotent(Request request) {
+        String method = request.method();
+        return "GET".equals(method) || "HEAD".equals(method) || "PUT".equals(method) || "DELETE".equals(method);
+    }
+
+    // 429响应的 Retry-After（秒）
+    private Long retryAfterMs(Response response) {
+        String retryAfter = response.header("Retry-After");
+        if (retryAfter == null) {
+            return null;
+        }
+        try {
+            return Long.parseLong(retryAfter.trim()) * 1000;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private Provider newProvider(String host) {
+        Provider provider = new Provider(new Semaphore(maxPending),
+                new CircuitBreaker(breakerFailureThreshold, breakerOpenMs));
+        Gauge.builder("llm.client.pending", provider, p -> maxPending - p.pending.availablePermits())
+                .tag("provider", host)
+                .register(registry);
+        Gauge.builder("llm.client.breaker.open", provider, p -> p.breaker.isOpen() ? 1 : 0)
+                .tag("provider", host)
+                .register(registry);
+        return provider;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        retryScheduler.shutdownNow();
+        client.dispatcher().cancelAll();
+        client.dispatcher().executorService().shutdown();
+        client.connectionPool().evictAll();
+    }
+
+    private static class Provider {
+        private final Semaphore pending;
+        private final CircuitBreaker breaker;
+
+        Provider(Semaphore pending, CircuitBreaker breaker) {
+            this.pending = pending;
+            this.breaker = breaker;
+        }
+    }
+
+    /**
+     * 熔断器：连续失败达到阈值后打开，打开期间直接拒绝；
+     * 到期后进入半开状态只放行一个试探请求，成功则关闭，失败则重新打开
+     */
+    static class CircuitBreaker {
+        private enum State { CLOSED, OPEN, HALF_OPEN }
+
+        private final int failureThreshold;
+        private final long openMs;
+        private State state = State.CLOSED;
+        private int consecutiveFailures;
+        private long openedAt;
+        private boolean trialInFlight;
+
+        CircuitBreaker(int failureThreshold, long openMs) {
+            this.failureThreshold = failureThreshold;
+            this.openMs = openMs;
+        }
+
+        synchronized boolean allowRequest() {
+            if (state == State.OPEN) {
+                if (System.currentTimeMillis() - openedAt < openMs) {
+                    return false;
+                }
+                state = State.HALF_OPEN;
+                trialInFlight = false;
+            }
+            if (state == State.HALF_OPEN) {
+                if (trialInFlight) {
+                    return false;
+                }
+                trialInFlight = true;
+            }
+            return true;
+        }
+
+        synchronized void recordSuccess() {
+            state = State.CLOSED;
+            consecutiveFailures = 0;
+            trialInFlight = false;
+        }
+
+        synchronized void recordFailure() {
+            consecutiveFailures++;
+            if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+                if (state != State.OPEN) {
+                    logger.warn("AI接口连续失败{}次，熔断{}ms", consecutiveFailures, openMs);
+                }
+                state = State.OPEN;
+                openedAt = System.currentTimeMillis();
+                trialInFlight = false;
+            }
+        }
+
+        synchronized void releaseTrial() {
+            trialInFlight = false;
+        }
+
+        synchronized boolean isOpen() {
+            return state == State.OPEN;
+        }
+    }
+}
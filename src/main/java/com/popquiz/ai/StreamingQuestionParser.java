@@ -0,0 +1,94 @@
+package com.popquiz.ai;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 流式响应的增量解析器
+ * 模型逐段返回的文本依次追加进来，一旦 "questions" 数组中的某个题目对象闭合，
+ * 立即把该对象的JSON文本交出，不必等待整个响应结束
+ */
+class StreamingQuestionParser {
+
+    private static final String QUESTIONS_KEY = "\"questions\"";
+
+    private final StringBuilder buffer = new StringBuilder();
+    // 下一个待扫描字符的位置
+    private int position;
+    // 是否已进入 questions 数组
+    private boolean inArray;
+    private boolean finished;
+    private boolean inString;
+    private boolean escaped;
+    // 数组内的花括号深度，0表示在两个题目对象之间
+    private int depth;
+    private int objectStart = -1;
+
+    /**
+     * 追加一段文本，返回本次新闭合的题目对象JSON
+     */
+    List<String> append(String chunk) {
+        List<String> completed = new ArrayList<>();
+        buffer.append(chunk);
+        if (finished) {
+            return completed;
+        }
+        if (!inArray && !seekArrayStart()) {
+            return completed;
+        }
+        for (; position < buffer.length(); position++) {
+            char c = buffer.charAt(position);
+            if (inString) {
+                if (escaped) {
+                    escaped = false;
+                } else if (c == '\\') {
+                    escaped = true;
+                } else if (c == '"') {
+                    inString = false;
+                }
+                continue;
+            }
+            if (c == '"') {
+                inString = true;
+            } else if (c == '{') {
+                if (depth == 0) {
+                    objectStart = position;
+                }
+                depth++;
+            } else if (c == '}') {
+                depth--;
+                if (depth == 0 && objectStart >= 0) {
+                    completed.add(buffer.substring(objectStart, position + 1));
+                    objectStart = -1;
+                }
+            } else if (c == ']' && depth == 0) {
+                finished = true;
+                position++;
+                break;
+            }
+        }
+        return completed;
+    }
+
+    /**
+     * 到目前为止收到的完整文本，流式解析失败时整体解析
+     */
+    String getText() {
+        return buffer.toString();
+    }
+
+    // 定位 "questions" 之后的 '['，找到后从其后开始扫描
+    private boolean seekArrayStart() {
+        int key = buffer.indexOf(QUESTIONS_KEY);
+        if (key < 0) {
+            return false;
+        }
+        int bracket = buffer.indexOf("[", key + QUESTIONS_KEY.length());
+        if (bracket < 0) {
+            return false;
+        }
+        inArray = true;
+        position = bracket + 1;
+        return true;
+    }
+}
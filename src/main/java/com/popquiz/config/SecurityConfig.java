@@ -45,7 +45,9 @@ public class SecurityConfig {
             .exceptionHandling(exception -> exception.authenticationEntryPoint(authenticationEntryPoint))
             // 请求认证配置 - 允许所有请求匿名访问
             .authorizeHttpRequests(auth -> auth
-                // 所有请求都允许匿名访问
+                // 运行指标仅管理员可见
+                .requestMatchers("/actuator/metrics/**").hasRole("ADMIN")
+                // 其余请求都允许匿名访问
                 .anyRequest().permitAll()
             );
         
@@ -62,6 +64,8 @@ public class SecurityConfig {
         configuration.setAllowedOriginPatterns(Arrays.asList("*"));
         configuration.setAllowedMethods(Arrays.asList("*"));
         configuration.setAllowedHeaders(Arrays.asList("*"));
+        // 允许前端读取预览ID与ETag响应头
+        configuration.setExposedHeaders(Arrays.asList("X-Preview-Id", "ETag"));
         
         UrlBasedCorsConfigurationSource source = new UrlBasedCorsConfigurationSource();
         source.registerCorsConfiguration("/**", configuration);
@@ -0,0 +1,81 @@
+package com.popquiz.config;
+
+import com.popquiz.model.Role;
+import com.popquiz.model.User;
+import com.popquiz.repository.UserRepository;
+import com.popquiz.service.JwtService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.lang.NonNull;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageHeaderAccessor;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * STOMP连接认证拦截器
+ * 仅在CONNECT帧校验一次JWT，将解析出的用户身份保存到会话中
+ */
+@Component
+public class StompAuthChannelInterceptor implements ChannelInterceptor {
+
+    private static final Logger logger = LoggerFactory.getLogger(StompAuthChannelInterceptor.class);
+
+    public static final String SESSION_USER_ID = "userId";
+    public static final String SESSION_ROLES = "roles";
+
+    private final JwtService jwtService;
+    private final UserRepository userRepository;
+
+    public StompAuthChannelInterceptor(JwtService jwtService, UserRepository userRepository) {
+        this.jwtService = jwtService;
+        this.userRepository = userRepository;
+    }
+
+    @Override
+    public Message<?> preSend(@NonNull Message<?> message, @NonNull MessageChannel channel) {
+        StompHeaderAccessor accessor = MessageHeaderAccessor.getAccessor(message, StompHeaderAccessor.class);
+        if (accessor == null || !StompCommand.CONNECT.equals(accessor.getCommand())) {
+            return message;
+        }
+
+        String authHeader = accessor.getFirstNativeHeader("Authorization");
+        if (authHeader == null || !authHeader.startsWith("Bearer ")) {
+            return message;
+        }
+
+        authenticate(authHeader.substring(7)).ifPresent(principal -> {
+            accessor.setUser(principal);
+            Map<String, Object> sessionAttributes = accessor.getSessionAttributes();
+            if (sessionAttributes != null) {
+                sessionAttributes.put(SESSION_USER_ID, principal.getUserId());
+                sessionAttributes.put(SESSION_ROLES, principal.getRoles());
+            }
+        });
+        return message;
+    }
+
+    private Optional<StompPrincipal> authenticate(String jwt) {
+        String username = jwtService.extractUsername(jwt);
+        if (username == null || !jwtService.isTokenValid(jwt, username)) {
+            logger.debug("STOMP CONNECT 携带的token无效");
+            return Optional.empty();
+        }
+        return userRepository.findByUsername(username)
+                .filter(User::getEnabled)
+                .map(user -> {
+                    Set<String> roles = user.getRoles().stream()
+                            .map(Role::getName)
+                            .collect(Collectors.toSet());
+                    return new StompPrincipal(user.getId(), user.getUsername(), roles);
+                });
+    }
+}
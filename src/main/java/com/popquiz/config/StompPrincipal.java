@@ -0,0 +1,43 @@
+package com.popquiz.config;
+
+import java.security.Principal;
+import java.util.Set;
+
+/**
+ * STOMP会话的轻量用户身份
+ * 在CONNECT时解析一次，后续每条消息直接使用，无需再查询数据库
+ */
+public class StompPrincipal implements Principal {
+
+    private final Long userId;
+    private final String username;
+    private final Set<String> roles;
+
+    public StompPrincipal(Long userId, String username, Set<String> roles) {
+        this.userId = userId;
+        this.username = username;
+        this.roles = Set.copyOf(roles);
+    }
+
+    @Override
+    public String getName() {
+        return username;
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    public Set<String> getRoles() {
+        return roles;
+    }
+
+    public boolean hasRole(String role) {
+        return roles.contains(role);
+    }
+
+    @Override
+    public String toString() {
+        return "StompPrincipal{userId=" + userId + ", username='" + username + "'}";
+    }
+}
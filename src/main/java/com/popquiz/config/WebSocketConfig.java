@@ -1,10 +1,17 @@
 package com.popquiz.config;
 
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
 import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketTransportRegistration;
+import org.springframework.web.socket.server.standard.ServletServerContainerFactoryBean;
+import org.springframework.web.socket.server.standard.TomcatRequestUpgradeStrategy;
+import org.springframework.web.socket.server.support.DefaultHandshakeHandler;
 
 /**
  * WebSocket配置类
@@ -14,14 +21,32 @@ import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerCo
 @EnableWebSocketMessageBroker
 public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
 
+    private final StompAuthChannelInterceptor stompAuthChannelInterceptor;
+
+    // 单条STOMP消息的最大字节数
+    @Value("${websocket.message-size-limit:65536}")
+    private int messageSizeLimit;
+
+    // 每个会话发送缓冲区的最大字节数，超出后慢客户端会被断开
+    @Value("${websocket.send-buffer-size-limit:524288}")
+    private int sendBufferSizeLimit;
+
+    // 单次发送的最长耗时（毫秒）
+    @Value("${websocket.send-time-limit:10000}")
+    private int sendTimeLimit;
+
+    public WebSocketConfig(StompAuthChannelInterceptor stompAuthChannelInterceptor) {
+        this.stompAuthChannelInterceptor = stompAuthChannelInterceptor;
+    }
+
     @Override
     public void configureMessageBroker(MessageBrokerRegistry config) {
         // 启用简单的基于内存的消息代理，将消息发送到以/topic开头的目标
         config.enableSimpleBroker("/topic", "/queue");
-        
+
         // 设置应用程序目的地前缀
         config.setApplicationDestinationPrefixes("/app");
-        
+
         // 设置用户目的地前缀
         config.setUserDestinationPrefix("/user");
     }
@@ -32,5 +57,35 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
         registry.addEndpoint("/ws")
                 .setAllowedOriginPatterns("*")
                 .withSockJS();
+
+        // 原生WebSocket终端，无SockJS帧开销；
+        // Tomcat容器在握手时按客户端请求协商 permessage-deflate 压缩扩展
+        registry.addEndpoint("/ws-native")
+                .setHandshakeHandler(new DefaultHandshakeHandler(new TomcatRequestUpgradeStrategy()))
+                .setAllowedOriginPatterns("*");
+    }
+
+    @Override
+    public void configureClientInboundChannel(ChannelRegistration registration) {
+        // CONNECT时认证一次，之后的消息直接使用会话中的用户身份
+        registration.interceptors(stompAuthChannelInterceptor);
+    }
+
+    @Override
+    public void configureWebSocketTransport(WebSocketTransportRegistration registration) {
+        registration.setMessageSizeLimit(messageSizeLimit)
+                .setSendBufferSizeLimit(sendBufferSizeLimit)
+                .setSendTimeLimit(sendTimeLimit);
+    }
+
+    /**
+     * 容器级别的WebSocket缓冲区设置，需与STOMP消息大小上限保持一致
+     */
+    @Bean
+    public ServletServerContainerFactoryBean createWebSocketContainer() {
+        ServletServerContainerFactoryBean container = new ServletServerContainerFactoryBean();
+        container.setMaxTextMessageBufferSize(messageSizeLimit);
+        container.setMaxBinaryMessageBufferSize(messageSizeLimit);
+        return container;
     }
-} 
\ No newline at end of file
+}
@@ -0,0 +1,45 @@
+package com.popquiz.controller;
+
+import com.popquiz.dto.IngestionRecordDto;
+import com.popquiz.service.ContentIngestionExecutor;
+import com.popquiz.service.IngestionMetrics;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 管理员接口：内容处理情况
+ * 各阶段耗时直方图见 /actuator/metrics/content.ingestion.stage
+ */
+@RestController
+@RequestMapping("/api/admin")
+@PreAuthorize("hasRole('ADMIN')")
+public class AdminController {
+
+    private final IngestionMetrics ingestionMetrics;
+    private final ContentIngestionExecutor ingestionExecutor;
+
+    public AdminController(IngestionMetrics ingestionMetrics,
+                           ContentIngestionExecutor ingestionExecutor) {
+        this.ingestionMetrics = ingestionMetrics;
+        this.ingestionExecutor = ingestionExecutor;
+    }
+
+    /** 1. 当前处理队列 */
+    @GetMapping("/ingestion/queue")
+    public ResponseEntity<?> ingestionQueue() {
+        return ResponseEntity.ok(Map.of(
+                "queued", ingestionExecutor.getQueueSize(),
+                "active", ingestionExecutor.getActiveCount()));
+    }
+
+    /** 2. 最近处理记录中最慢的文档 */
+    @GetMapping("/ingestion/slowest")
+    public ResponseEntity<List<IngestionRecordDto>> slowestDocuments(
+            @RequestParam(defaultValue = "20") int limit) {
+        return ResponseEntity.ok(ingestionMetrics.slowest(Math.max(1, Math.min(limit, 100))));
+    }
+}
@@ -3,23 +3,30 @@ package com.popquiz.controller;
 import com.popquiz.ai.QuizOption;
 import com.popquiz.ai.QuizQuestion;
 import com.popquiz.dto.ContentDto;
+import com.popquiz.dto.ContentSegmentDto;
 import com.popquiz.dto.LectureDto;
 import com.popquiz.dto.QuizDto;
 import com.popquiz.mapper.LectureMapper;
 import com.popquiz.mapper.QuizMapper;
 import com.popquiz.model.*;
+import com.popquiz.repository.ContentRepository;
 import com.popquiz.repository.LectureRepository;
 import com.popquiz.repository.QuizRepository;
 import com.popquiz.repository.UserRepository;
 import com.popquiz.service.ContentProcessingService;
+import com.popquiz.service.ContentSegmentService;
 import com.popquiz.service.LectureService;
+import com.popquiz.service.LectureVersionService;
 import com.popquiz.service.QuizService;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.security.Principal;
 import java.time.LocalDateTime;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
@@ -28,12 +35,18 @@ import java.util.stream.Collectors;
 @RequestMapping("/api")
 public class LectureController {
 
+    // 单次最多返回的分段数
+    private static final int MAX_SEGMENTS_PER_REQUEST = 100;
+
     private final LectureService lectureService;
     private final ContentProcessingService contentProcessingService;
     private final QuizService quizService;              // ← 新增注入
     private final UserRepository userRepository;
     private final LectureRepository lectureRepository;
     private final QuizRepository quizRepository;
+    private final ContentRepository contentRepository;
+    private final LectureVersionService lectureVersionService;
+    private final ContentSegmentService contentSegmentService;
 
     public LectureController(
             LectureService lectureService,
@@ -41,13 +54,19 @@ public class LectureController {
             QuizService quizService,                  // ← 新增参数
             UserRepository userRepository,
             LectureRepository lectureRepository,
-            QuizRepository quizRepository) {
+            QuizRepository quizRepository,
+            ContentRepository contentRepository,
+            LectureVersionService lectureVersionService,
+            ContentSegmentService contentSegmentService) {
         this.lectureService = lectureService;
         this.contentProcessingService = contentProcessingService;
         this.quizService = quizService;              // ← 赋值
         this.userRepository = userRepository;
         this.lectureRepository = lectureRepository;
         this.quizRepository = quizRepository;
+        this.contentRepository = contentRepository;
+        this.lectureVersionService = lectureVersionService;
+        this.contentSegmentService = contentSegmentService;
     }
 
     @GetMapping("/organizer/lectures")
@@ -88,6 +107,7 @@ public class LectureController {
         }
 
         Lecture updatedLecture = lectureRepository.save(lecture);
+        lectureVersionService.bump(lectureId);
         return ResponseEntity.ok(LectureMapper.toDto(updatedLecture));
     }
 
@@ -116,6 +136,7 @@ public class LectureController {
         lecture.setStartTime(LocalDateTime.now());
 
         Lecture updatedLecture = lectureRepository.save(lecture);
+        lectureVersionService.bump(lectureId);
         return ResponseEntity.ok(LectureMapper.toDto(updatedLecture));
     }
 
@@ -135,6 +156,7 @@ public class LectureController {
         lecture.setEndTime(LocalDateTime.now());
 
         Lecture updatedLecture = lectureRepository.save(lecture);
+        lectureVersionService.bump(lectureId);
         return ResponseEntity.ok(LectureMapper.toDto(updatedLecture));
     }
 
@@ -163,14 +185,141 @@ public class LectureController {
         }
     }
 
+    @PostMapping("/presenter/lectures/{lectureId}/content/archive")
+    public ResponseEntity<?> uploadContentArchive(
+            @PathVariable Long lectureId,
+            @RequestParam("file") MultipartFile file,
+            Principal principal) {
+        try {
+            User presenter = userRepository.findByUsername(principal.getName())
+                    .orElseThrow(() -> new RuntimeException("用户不存在"));
+
+            Lecture lecture = lectureRepository.findById(lectureId)
+                    .orElseThrow(() -> new RuntimeException("讲座不存在"));
+
+            if (!lecture.getPresenter().getId().equals(presenter.getId()) &&
+                    !lecture.getOrganizer().getId().equals(presenter.getId())) {
+                return ResponseEntity.status(403).body(Map.of("message", "无权上传内容"));
+            }
+
+            ContentProcessingService.ArchiveBatch batch = contentProcessingService.processArchiveUpload(file, lecture);
+            // 中途停止时已保存的文件仍在处理，前端据此显示部分成功
+            Map<String, Object> body = new HashMap<>();
+            body.put("batchId", batch.getBatchId());
+            body.put("contentIds", batch.getContentIds());
+            body.put("skipped", batch.getSkipped());
+            body.put("error", batch.getError());
+            body.put("message", batch.getError() == null
+                    ? "压缩包上传成功，共" + batch.getContentIds().size() + "个文件处理中"
+                    : "压缩包未能全部读取（" + batch.getError() + "），已保存的" + batch.getContentIds().size() + "个文件处理中");
+            return ResponseEntity.ok(body);
+
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(Map.of("message", "上传失败: " + e.getMessage()));
+        }
+    }
+
+    @PostMapping("/presenter/contents/{contentId}/revision")
+    public ResponseEntity<?> uploadContentRevision(
+            @PathVariable Long contentId,
+            @RequestParam("file") MultipartFile file,
+            Principal principal) {
+        try {
+            User presenter = userRepository.findByUsername(principal.getName())
+                    .orElseThrow(() -> new RuntimeException("用户不存在"));
+
+            Content content = contentRepository.findWithLectureById(contentId)
+                    .orElseThrow(() -> new RuntimeException("内容未找到"));
+            Lecture lecture = content.getLecture();
+
+            if (!lecture.getPresenter().getId().equals(presenter.getId()) &&
+                    !lecture.getOrganizer().getId().equals(presenter.getId())) {
+                return ResponseEntity.status(403).body(Map.of("message", "无权修改该内容"));
+            }
+
+            contentProcessingService.reviseContent(contentId, file);
+            return ResponseEntity.ok(Map.of("contentId", contentId, "message", "新版本上传成功，处理中"));
+
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(Map.of("message", "上传失败: " + e.getMessage()));
+        }
+    }
+
+    @PostMapping("/presenter/contents/{contentId}/retry")
+    public ResponseEntity<?> retryContent(@PathVariable Long contentId, Principal principal) {
+        try {
+            User presenter = userRepository.findByUsername(principal.getName())
+                    .orElseThrow(() -> new RuntimeException("用户不存在"));
+
+            Content content = contentRepository.findWithLectureById(contentId)
+                    .orElseThrow(() -> new RuntimeException("内容未找到"));
+            Lecture lecture = content.getLecture();
+
+            if (!lecture.getPresenter().getId().equals(presenter.getId()) &&
+                    !lecture.getOrganizer().getId().equals(presenter.getId())) {
+                return ResponseEntity.status(403).body(Map.of("message", "无权操作该内容"));
+            }
+
+            contentProcessingService.retryContent(contentId);
+            return ResponseEntity.ok(Map.of("contentId", contentId, "message", "已重新提交处理"));
+
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(Map.of("message", "重试失败: " + e.getMessage()));
+        }
+    }
+
+    @DeleteMapping("/presenter/contents/{contentId}")
+    public ResponseEntity<?> deleteContent(@PathVariable Long contentId, Principal principal) {
+        User presenter = userRepository.findByUsername(principal.getName())
+                .orElseThrow(() -> new RuntimeException("用户不存在"));
+
+        Content content = contentRepository.findWithLectureById(contentId)
+                .orElseThrow(() -> new RuntimeException("内容未找到"));
+        Lecture lecture = content.getLecture();
+
+        if (!lecture.getPresenter().getId().equals(presenter.getId()) &&
+                !lecture.getOrganizer().getId().equals(presenter.getId())) {
+            return ResponseEntity.status(403).body(Map.of("message", "无权删除该内容"));
+        }
+
+        try {
+            contentProcessingService.deleteContent(content);
+        } catch (RuntimeException e) {
+            return ResponseEntity.badRequest().body(Map.of("message", "删除失败: " + e.getMessage()));
+        }
+        return ResponseEntity.ok(Map.of("message", "内容已删除"));
+    }
+
     @GetMapping("/lectures/{lectureId}/contents")
-    public ResponseEntity<List<ContentDto>> getLectureContents(@PathVariable Long lectureId) {
+    public ResponseEntity<List<ContentDto>> getLectureContents(
+            @PathVariable Long lectureId,
+            @RequestHeader(value = "If-None-Match", required = false) String ifNoneMatch) {
+        // 先取ETag再查询，查询期间的修改会在下次请求时体现
+        String etag = lectureVersionService.etag(lectureId, "contents");
+        if (lectureVersionService.notModified(ifNoneMatch, etag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+        }
         Lecture lecture = lectureRepository.findById(lectureId)
                 .orElseThrow(() -> new RuntimeException("讲座不存在"));
         List<ContentDto> contentDtos = lecture.getContents().stream()
                 .map(ContentDto::from)
                 .toList();
-        return ResponseEntity.ok(contentDtos);
+        return ResponseEntity.ok().eTag(etag).cacheControl(CacheControl.noCache()).body(contentDtos);
+    }
+
+    @GetMapping("/contents/{contentId}/segments")
+    public ResponseEntity<List<ContentSegmentDto>> getContentSegments(
+            @PathVariable Long contentId,
+            @RequestParam(defaultValue = "0") int from,
+            @RequestParam(defaultValue = "20") int count) {
+        if (!contentRepository.existsById(contentId)) {
+            throw new RuntimeException("内容未找到");
+        }
+        int limit = Math.min(Math.max(count, 1), MAX_SEGMENTS_PER_REQUEST);
+        List<ContentSegmentDto> segments = contentSegmentService.getRange(contentId, from, limit).stream()
+                .map(ContentSegmentDto::from)
+                .toList();
+        return ResponseEntity.ok(segments);
     }
 
     @GetMapping("/lectures/{lectureId}/quizzes")
@@ -197,10 +346,16 @@ public class LectureController {
     }
 
     @GetMapping("/lectures/{lectureId}")
-    public ResponseEntity<LectureDto> getLectureDetails(@PathVariable Long lectureId) {
+    public ResponseEntity<LectureDto> getLectureDetails(
+            @PathVariable Long lectureId,
+            @RequestHeader(value = "If-None-Match", required = false) String ifNoneMatch) {
+        String etag = lectureVersionService.etag(lectureId, "detail");
+        if (lectureVersionService.notModified(ifNoneMatch, etag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+        }
         Lecture lecture = lectureRepository.findById(lectureId)
                 .orElseThrow(() -> new RuntimeException("讲座不存在"));
-        return ResponseEntity.ok(LectureMapper.toDto(lecture));
+        return ResponseEntity.ok().eTag(etag).cacheControl(CacheControl.noCache()).body(LectureMapper.toDto(lecture));
     }
 
     // ========= DTO 内部类 =========
@@ -4,7 +4,6 @@ import com.popquiz.ai.QuizQuestion;
 import com.popquiz.dto.QuizDto;
 import com.popquiz.mapper.QuizMapper;
 import com.popquiz.model.Lecture;
-import com.popquiz.model.Question;
 import com.popquiz.model.Quiz;
 import com.popquiz.model.User;
 import com.popquiz.model.UserResponse;
@@ -12,15 +11,25 @@ import com.popquiz.repository.LectureRepository;
 import com.popquiz.repository.QuestionRepository;
 import com.popquiz.repository.QuizRepository;
 import com.popquiz.repository.UserRepository;
+import com.popquiz.service.LectureVersionService;
 import com.popquiz.service.NotificationService;
+import com.popquiz.service.QuizGenerationCache;
+import com.popquiz.service.QuizPayloadCache;
 import com.popquiz.service.QuizService;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.security.Principal;
-import java.time.LocalDateTime;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 @RestController
@@ -33,6 +42,8 @@ public class QuizController {
     private final LectureRepository lectureRepository;
     private final UserRepository userRepository;
     private final NotificationService notificationService;
+    private final QuizPayloadCache quizPayloadCache;
+    private final LectureVersionService lectureVersionService;
 
     public QuizController(
             QuizService quizService,
@@ -40,50 +51,95 @@ public class QuizController {
             QuestionRepository questionRepository,
             LectureRepository lectureRepository,
             UserRepository userRepository,
-            NotificationService notificationService) {
+            NotificationService notificationService,
+            QuizPayloadCache quizPayloadCache,
+            LectureVersionService lectureVersionService) {
         this.quizService = quizService;
         this.quizRepository = quizRepository;
         this.questionRepository = questionRepository;
         this.lectureRepository = lectureRepository;
         this.userRepository = userRepository;
         this.notificationService = notificationService;
+        this.quizPayloadCache = quizPayloadCache;
+        this.lectureVersionService = lectureVersionService;
     }
 
+    public static final String PREVIEW_ID_HEADER = "X-Preview-Id";
+
     // ========== 1. AI 预览出题 ==========
     @PostMapping("/lectures/{lectureId}/generate-quiz")
-    public ResponseEntity<?> previewGeneratedQuestions(
+    public CompletableFuture<ResponseEntity<?>> previewGeneratedQuestions(
             @PathVariable Long lectureId,
             @RequestParam int questionCount,
             @RequestParam int optionCount,
             @RequestParam int difficultyLevel,
+            @RequestParam(required = false) String focus,
+            @RequestParam(required = false) String streamId,
             Principal principal
     ) {
+        // 模型调用异步执行，请求线程在选取出题文本后即释放，结果就绪时再完成响应
+        CompletableFuture<QuizGenerationCache.CachedGeneration> generation;
         try {
-            List<QuizQuestion> preview =
-                    quizService.generateQuizQuestions(lectureId, questionCount, optionCount, difficultyLevel);
-            return ResponseEntity.ok(preview);
+            // 每道题生成完整即通过WebSocket推送给主讲人，streamId由前端传入用于区分多次预览
+            AtomicInteger index = new AtomicInteger();
+            Consumer<QuizQuestion> listener = principal == null ? null : question -> {
+                Map<String, Object> data = new HashMap<>();
+                data.put("lectureId", lectureId);
+                data.put("streamId", streamId);
+                data.put("index", index.getAndIncrement());
+                data.put("question", question);
+                notificationService.sendUserNotification(principal.getName(), "QUIZ_PREVIEW_QUESTION", data);
+            };
+            generation = quizService.previewQuizQuestionsAsync(lectureId, questionCount, difficultyLevel, focus, listener);
         } catch (Exception e) {
-            return ResponseEntity.badRequest()
-                    .body(Map.of("message", e.getMessage()));
-        }
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest()
+                    .body(Map.of("message", e.getMessage())));
+        }
+        return generation.handle((preview, error) -> {
+            if (error != null) {
+                Throwable cause = error instanceof CompletionException && error.getCause() != null
+                        ? error.getCause() : error;
+                return ResponseEntity.badRequest().body(Map.of("message", String.valueOf(cause.getMessage())));
+            }
+            if (principal != null) {
+                Map<String, Object> data = new HashMap<>();
+                data.put("lectureId", lectureId);
+                data.put("streamId", streamId);
+                data.put("previewId", preview.getPreviewId());
+                data.put("questionCount", preview.getQuestions().size());
+                // 逐题推送的index是生成先后的顺序，合并后题目按讲座顺序重排，最终顺序以这里为准
+                data.put("questions", preview.getQuestions());
+                notificationService.sendUserNotification(principal.getName(), "QUIZ_PREVIEW_COMPLETE", data);
+            }
+            // 预览ID放在响应头中，创建测验时带上即可保存这批题目
+            return ResponseEntity.ok()
+                    .header(PREVIEW_ID_HEADER, preview.getPreviewId())
+                    .body(preview.getQuestions());
+        });
     }
 
     // ========== 2. 主讲人：创建测验 ==========
     @PostMapping("/presenter/lectures/{lectureId}/quizzes")
-    public ResponseEntity<QuizDto> createQuiz(
+    public CompletableFuture<ResponseEntity<QuizDto>> createQuiz(
             @PathVariable Long lectureId,
             @RequestBody CreateQuizRequest req,
             Principal principal
     ) {
-        Quiz quiz = quizService.createQuizForLecture(
-                lectureId, req.getTitle(), req.getQuestionCount(), req.getDifficultyLevel());
-        return ResponseEntity.ok(QuizMapper.toDto(quiz));
+        // 需要调用模型时异步等待结果，请求线程和数据库连接都不会被占用
+        return quizService.createQuizForLectureAsync(
+                lectureId, req.getTitle(), req.getQuestionCount(), req.getDifficultyLevel(), req.getFocus(),
+                req.getPreviewId())
+                .thenApply(quiz -> ResponseEntity.ok(QuizMapper.toDto(quiz)));
     }
 
     public static class CreateQuizRequest {
         private String title;
         private Integer questionCount;
         private Integer difficultyLevel;
+        // 出题关注的知识点关键词，可为空
+        private String focus;
+        // 预览接口返回的预览ID，不为空时直接保存预览过的题目
+        private String previewId;
 
         public String getTitle() {
             return title;
@@ -103,6 +159,18 @@ public class QuizController {
         public void setDifficultyLevel(Integer difficultyLevel) {
             this.difficultyLevel = difficultyLevel;
         }
+        public String getFocus() {
+            return focus;
+        }
+        public void setFocus(String focus) {
+            this.focus = focus;
+        }
+        public String getPreviewId() {
+            return previewId;
+        }
+        public void setPreviewId(String previewId) {
+            this.previewId = previewId;
+        }
     }
 
     // ========== 3. 主讲人：发布测验 ==========
@@ -141,12 +209,17 @@ public class QuizController {
     @GetMapping("/presenter/lectures/{lectureId}/quizzes")
     public ResponseEntity<List<QuizDto>> listPresenterQuizzes(
             @PathVariable Long lectureId,
+            @RequestHeader(value = "If-None-Match", required = false) String ifNoneMatch,
             Principal principal
     ) {
+        String etag = lectureVersionService.etag(lectureId, "presenter-quizzes");
+        if (lectureVersionService.notModified(ifNoneMatch, etag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+        }
         Lecture lecture = lectureRepository.findById(lectureId)
                 .orElseThrow(() -> new RuntimeException("讲座不存在"));
         List<Quiz> quizzes = quizRepository.findByLectureOrderBySequenceNumberAsc(lecture);
-        return ResponseEntity.ok(QuizMapper.toDtoList(quizzes));
+        return ResponseEntity.ok().eTag(etag).cacheControl(CacheControl.noCache()).body(QuizMapper.toDtoList(quizzes));
     }
 
     // ========== 6. 主讲人：查看测验统计 ==========
@@ -163,154 +236,36 @@ public class QuizController {
     @GetMapping("/audience/lectures/{lectureId}/quizzes")
     public ResponseEntity<List<QuizDto>> listAudienceQuizzes(
             @PathVariable Long lectureId,
+            @RequestHeader(value = "If-None-Match", required = false) String ifNoneMatch,
             Principal principal
     ) {
+        String etag = lectureVersionService.etag(lectureId, "audience-quizzes");
+        if (lectureVersionService.notModified(ifNoneMatch, etag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+        }
         Lecture lecture = lectureRepository.findById(lectureId)
                 .orElseThrow(() -> new RuntimeException("讲座不存在"));
         List<Quiz> quizzes = quizRepository.findByLectureOrderBySequenceNumberAsc(lecture).stream()
                 .filter(q -> q.getStatus() == Quiz.QuizStatus.PUBLISHED
                         || q.getStatus() == Quiz.QuizStatus.ACTIVE)
                 .collect(Collectors.toList());
-        return ResponseEntity.ok(QuizMapper.toDtoList(quizzes));
+        return ResponseEntity.ok().eTag(etag).cacheControl(CacheControl.noCache()).body(QuizMapper.toDtoList(quizzes));
     }
 
     // ========== 8. 听众：获取某个测验详细（带题目） ==========
     @GetMapping("/audience/quizzes/{quizId}")
-    public ResponseEntity<QuizDetailsResponse> getQuizDetails(
+    public ResponseEntity<byte[]> getQuizDetails(
             @PathVariable Long quizId,
             Principal principal
     ) {
-        Quiz quiz = quizRepository.findById(quizId)
-                .orElseThrow(() -> new RuntimeException("测验不存在"));
-        if (quiz.getStatus() != Quiz.QuizStatus.ACTIVE) {
+        // 直接返回发布/激活时预渲染的字节，不再逐请求查询题目和选项
+        QuizPayloadCache.RenderedQuiz rendered = quizPayloadCache.get(quizId);
+        if (rendered.getStatus() != Quiz.QuizStatus.ACTIVE) {
             return ResponseEntity.badRequest().body(null);
         }
-        List<Question> questions = questionRepository.findByQuizOrderBySequenceNumberAsc(quiz);
-
-        QuizDetailsResponse resp = new QuizDetailsResponse();
-        resp.setQuizId(quiz.getId());
-        resp.setTitle(quiz.getTitle());
-        resp.setTimeLimit(quiz.getTimeLimit());
-        resp.setExpiresAt(quiz.getExpiresAt());
-        resp.setQuestions(questions.stream().map(q -> {
-            QuestionDto d = new QuestionDto();
-            d.setId(q.getId());
-            d.setContent(q.getContent());
-            d.setType(q.getType().name());
-            d.setSequenceNumber(q.getSequenceNumber());
-            d.setOptions(q.getOptions().stream().map(o -> {
-                OptionDto od = new OptionDto();
-                od.setId(o.getId());
-                od.setContent(o.getContent());
-                od.setLabel(o.getOptionLabel());
-                return od;
-            }).collect(Collectors.toList()));
-            return d;
-        }).collect(Collectors.toList()));
-        return ResponseEntity.ok(resp);
-    }
-
-    public static class QuizDetailsResponse {
-        private Long quizId;
-        private String title;
-        private Integer timeLimit;
-        private LocalDateTime expiresAt;
-        private List<QuestionDto> questions;
-
-        public Long getQuizId() {
-            return quizId;
-        }
-        public void setQuizId(Long quizId) {
-            this.quizId = quizId;
-        }
-        public String getTitle() {
-            return title;
-        }
-        public void setTitle(String title) {
-            this.title = title;
-        }
-        public Integer getTimeLimit() {
-            return timeLimit;
-        }
-        public void setTimeLimit(Integer timeLimit) {
-            this.timeLimit = timeLimit;
-        }
-        public LocalDateTime getExpiresAt() {
-            return expiresAt;
-        }
-        public void setExpiresAt(LocalDateTime expiresAt) {
-            this.expiresAt = expiresAt;
-        }
-        public List<QuestionDto> getQuestions() {
-            return questions;
-        }
-        public void setQuestions(List<QuestionDto> questions) {
-            this.questions = questions;
-        }
-    }
-
-    public static class QuestionDto {
-        private Long id;
-        private String content;
-        private String type;
-        private Integer sequenceNumber;
-        private List<OptionDto> options;
-
-        public Long getId() {
-            return id;
-        }
-        public void setId(Long id) {
-            this.id = id;
-        }
-        public String getContent() {
-            return content;
-        }
-        public void setContent(String content) {
-            this.content = content;
-        }
-        public String getType() {
-            return type;
-        }
-        public void setType(String type) {
-            this.type = type;
-        }
-        public Integer getSequenceNumber() {
-            return sequenceNumber;
-        }
-        public void setSequenceNumber(Integer sequenceNumber) {
-            this.sequenceNumber = sequenceNumber;
-        }
-        public List<OptionDto> getOptions() {
-            return options;
-        }
-        public void setOptions(List<OptionDto> options) {
-            this.options = options;
-        }
-    }
-
-    public static class OptionDto {
-        private Long id;
-        private String content;
-        private char label;
-
-        public Long getId() {
-            return id;
-        }
-        public void setId(Long id) {
-            this.id = id;
-        }
-        public String getContent() {
-            return content;
-        }
-        public void setContent(String content) {
-            this.content = content;
-        }
-        public char getLabel() {
-            return label;
-        }
-        public void setLabel(char label) {
-            this.label = label;
-        }
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(rendered.toResponseBody(System.currentTimeMillis()));
     }
 
     // ========== 9. 听众：提交答案 ==========
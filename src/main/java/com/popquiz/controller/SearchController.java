@@ -0,0 +1,70 @@
+package com.popquiz.controller;
+
+import com.popquiz.dto.SearchHitDto;
+import com.popquiz.model.Lecture;
+import com.popquiz.model.User;
+import com.popquiz.repository.LectureRepository;
+import com.popquiz.repository.UserRepository;
+import com.popquiz.service.ContentIndexService;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.security.Principal;
+import java.util.List;
+
+/**
+ * 讲座资料检索
+ */
+@RestController
+@RequestMapping("/api")
+public class SearchController {
+
+    // 单次最多返回的命中数
+    private static final int MAX_HITS = 50;
+
+    private final ContentIndexService contentIndexService;
+    private final LectureRepository lectureRepository;
+    private final UserRepository userRepository;
+
+    public SearchController(ContentIndexService contentIndexService,
+                            LectureRepository lectureRepository,
+                            UserRepository userRepository) {
+        this.contentIndexService = contentIndexService;
+        this.lectureRepository = lectureRepository;
+        this.userRepository = userRepository;
+    }
+
+    /**
+     * 在单个讲座的资料中检索
+     */
+    @GetMapping("/lectures/{lectureId}/search")
+    public ResponseEntity<List<SearchHitDto>> searchLecture(
+            @PathVariable Long lectureId,
+            @RequestParam("q") String keywords,
+            @RequestParam(defaultValue = "20") int limit) {
+        if (!lectureRepository.existsById(lectureId)) {
+            throw new RuntimeException("讲座不存在");
+        }
+        return ResponseEntity.ok(contentIndexService.search(List.of(lectureId), keywords, clamp(limit)));
+    }
+
+    /**
+     * 在当前用户组织或主讲的全部讲座资料中检索
+     */
+    @GetMapping("/presenter/search")
+    public ResponseEntity<List<SearchHitDto>> searchOwnLectures(
+            @RequestParam("q") String keywords,
+            @RequestParam(defaultValue = "20") int limit,
+            Principal principal) {
+        User user = userRepository.findByUsername(principal.getName())
+                .orElseThrow(() -> new RuntimeException("用户不存在"));
+        List<Long> lectureIds = lectureRepository.findByOrganizerOrPresenter(user, user).stream()
+                .map(Lecture::getId)
+                .toList();
+        return ResponseEntity.ok(contentIndexService.search(lectureIds, keywords, clamp(limit)));
+    }
+
+    private int clamp(int limit) {
+        return Math.min(Math.max(limit, 1), MAX_HITS);
+    }
+}
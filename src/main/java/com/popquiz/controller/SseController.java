@@ -0,0 +1,50 @@
+package com.popquiz.controller;
+
+import com.popquiz.service.SseBroadcastService;
+import org.springframework.http.CacheControl;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+
+/**
+ * SSE只读事件流控制器
+ * 供投影屏、大屏展示等被动客户端使用，无需建立STOMP会话
+ */
+@RestController
+@RequestMapping("/api/sse")
+public class SseController {
+
+    private final SseBroadcastService sseBroadcastService;
+
+    public SseController(SseBroadcastService sseBroadcastService) {
+        this.sseBroadcastService = sseBroadcastService;
+    }
+
+    /**
+     * 讲座事件流（测验激活、过期等）
+     */
+    @GetMapping("/lectures/{lectureId}")
+    public ResponseEntity<ResponseBodyEmitter> streamLectureEvents(@PathVariable Long lectureId) {
+        return stream("lecture." + lectureId);
+    }
+
+    /**
+     * 测验统计事件流
+     */
+    @GetMapping("/quizzes/{quizId}")
+    public ResponseEntity<ResponseBodyEmitter> streamQuizEvents(@PathVariable Long quizId) {
+        return stream("quiz." + quizId + ".statistics");
+    }
+
+    private ResponseEntity<ResponseBodyEmitter> stream(String topic) {
+        return ResponseEntity.ok()
+                .contentType(MediaType.TEXT_EVENT_STREAM)
+                .cacheControl(CacheControl.noStore())
+                .header("X-Accel-Buffering", "no")
+                .body(sseBroadcastService.subscribe(topic));
+    }
+}
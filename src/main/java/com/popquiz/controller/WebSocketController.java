@@ -1,11 +1,13 @@
 package com.popquiz.controller;
 
+import com.popquiz.config.StompPrincipal;
 import com.popquiz.model.DiscussionComment;
 import com.popquiz.model.Question;
 import com.popquiz.model.User;
 import com.popquiz.repository.DiscussionCommentRepository;
 import com.popquiz.repository.QuestionRepository;
 import com.popquiz.repository.UserRepository;
+import com.popquiz.service.CommentDigestService;
 import com.popquiz.service.NotificationService;
 import org.springframework.messaging.handler.annotation.DestinationVariable;
 import org.springframework.messaging.handler.annotation.MessageMapping;
@@ -14,8 +16,6 @@ import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
 import org.springframework.stereotype.Controller;
 import org.springframework.transaction.annotation.Transactional;
 
-import java.security.Principal;
-import java.time.LocalDateTime;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -30,23 +30,26 @@ public class WebSocketController {
     private final UserRepository userRepository;
     private final QuestionRepository questionRepository;
     private final DiscussionCommentRepository discussionCommentRepository;
+    private final CommentDigestService commentDigestService;
 
     public WebSocketController(
             NotificationService notificationService,
             UserRepository userRepository,
             QuestionRepository questionRepository,
-            DiscussionCommentRepository discussionCommentRepository) {
+            DiscussionCommentRepository discussionCommentRepository,
+            CommentDigestService commentDigestService) {
         this.notificationService = notificationService;
         this.userRepository = userRepository;
         this.questionRepository = questionRepository;
         this.discussionCommentRepository = discussionCommentRepository;
+        this.commentDigestService = commentDigestService;
     }
 
     /**
      * 处理用户上线消息
      */
     @MessageMapping("/connect")
-    public void handleUserConnect(Principal principal, SimpMessageHeaderAccessor headerAccessor) {
+    public void handleUserConnect(StompPrincipal principal, SimpMessageHeaderAccessor headerAccessor) {
         if (principal != null) {
             String username = principal.getName();
             headerAccessor.getSessionAttributes().put("username", username);
@@ -66,7 +69,7 @@ public class WebSocketController {
     @MessageMapping("/lecture/{lectureId}/join")
     public void handleAudienceJoinLecture(
             @DestinationVariable Long lectureId,
-            Principal principal) {
+            StompPrincipal principal) {
         if (principal != null) {
             String username = principal.getName();
             
@@ -91,14 +94,14 @@ public class WebSocketController {
     public void handleQuestionComment(
             @DestinationVariable Long questionId,
             @Payload CommentMessage message,
-            Principal principal) {
+            StompPrincipal principal) {
         if (principal == null) {
             return;
         }
         
         try {
-            User user = userRepository.findByUsername(principal.getName())
-                    .orElseThrow(() -> new RuntimeException("用户不存在"));
+            // 用户身份已在CONNECT时认证，这里只取引用，不查询数据库
+            User user = userRepository.getReferenceById(principal.getUserId());
             
             Question question = questionRepository.findById(questionId)
                     .orElseThrow(() -> new RuntimeException("问题不存在"));
@@ -117,10 +120,10 @@ public class WebSocketController {
             }
             
             // 保存评论
-            discussionCommentRepository.save(comment);
+            DiscussionComment savedComment = discussionCommentRepository.save(comment);
             
-            // 发送新评论通知
-            notificationService.broadcastNewComment(questionId, user.getUsername());
+            // 加入评论摘要，按窗口批量推送
+            commentDigestService.enqueue(savedComment, principal.getUserId(), principal.getName());
             
         } catch (Exception e) {
             // 处理错误
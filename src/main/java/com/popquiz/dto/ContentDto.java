@@ -8,7 +8,9 @@ public class ContentDto {
     private String originalFilename;
     private String contentType;
     private String processStatus;
-    private String extractedText;  // ✅ 添加这行
+    private Integer segmentCount;
+    private Long textLength;
+    private Long cleanTextLength;
 
     public static ContentDto from(Content content) {
         ContentDto dto = new ContentDto();
@@ -17,7 +19,10 @@ public class ContentDto {
         dto.originalFilename = content.getOriginalFilename();
         dto.contentType = content.getType().name();
         dto.processStatus = content.getProcessStatus().name();
-        dto.extractedText = content.getExtractedText();  // ✅ 设置字段
+        // 列表只返回元数据，文本通过分段接口按需读取
+        dto.segmentCount = content.getSegmentCount();
+        dto.textLength = content.getTextLength();
+        dto.cleanTextLength = content.getCleanTextLength();
         return dto;
     }
 
@@ -38,6 +43,12 @@ public class ContentDto {
     public String getProcessStatus() { return processStatus; }
     public void setProcessStatus(String processStatus) { this.processStatus = processStatus; }
 
-    public String getExtractedText() { return extractedText; }
-    public void setExtractedText(String extractedText) { this.extractedText = extractedText; }
+    public Integer getSegmentCount() { return segmentCount; }
+    public void setSegmentCount(Integer segmentCount) { this.segmentCount = segmentCount; }
+
+    public Long getTextLength() { return textLength; }
+    public void setTextLength(Long textLength) { this.textLength = textLength; }
+
+    public Long getCleanTextLength() { return cleanTextLength; }
+    public void setCleanTextLength(Long cleanTextLength) { this.cleanTextLength = cleanTextLength; }
 }
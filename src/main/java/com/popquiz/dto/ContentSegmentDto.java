@@ -0,0 +1,30 @@
+package com.popquiz.dto;
+
+import com.popquiz.model.ContentSegment;
+import lombok.Data;
+
+/**
+ * 内容分段（按范围读取提取出的文本）
+ */
+@Data
+public class ContentSegmentDto {
+    private Integer sequenceNumber;
+    private String kind;
+    private Integer sourceIndex;
+    private Long charOffset;
+    private Integer charLength;
+    private String text;
+    private String cleanText;
+
+    public static ContentSegmentDto from(ContentSegment segment) {
+        ContentSegmentDto dto = new ContentSegmentDto();
+        dto.sequenceNumber = segment.getSequenceNumber();
+        dto.kind = segment.getKind().name();
+        dto.sourceIndex = segment.getSourceIndex();
+        dto.charOffset = segment.getCharOffset();
+        dto.charLength = segment.getCharLength();
+        dto.text = segment.getText();
+        dto.cleanText = segment.getCleanText();
+        return dto;
+    }
+}
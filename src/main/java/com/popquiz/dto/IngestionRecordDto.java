@@ -0,0 +1,25 @@
+package com.popquiz.dto;
+
+import lombok.Data;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+
+/**
+ * 一次内容处理的耗时记录，用于管理员查看最近最慢的文档
+ */
+@Data
+public class IngestionRecordDto {
+    private Long contentId;
+    private String title;
+    private String type;
+    private String outcome;
+    private Long fileSize;
+    private Integer segmentCount;
+    // 各阶段耗时（毫秒）：queue、parse、normalize、persist、post-process
+    private Map<String, Long> stageMs;
+    private Long totalMs;
+    // 解析吞吐量（字节/秒）
+    private Long bytesPerSecond;
+    private LocalDateTime finishedAt;
+}
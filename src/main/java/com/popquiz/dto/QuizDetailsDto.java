@@ -0,0 +1,18 @@
+package com.popquiz.dto;
+
+import lombok.Data;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * 听众视角的测验详情（不含正确答案）
+ */
+@Data
+public class QuizDetailsDto {
+    private Long quizId;
+    private String title;
+    private Integer timeLimit;
+    private LocalDateTime expiresAt;
+    private List<QuestionDto> questions;
+}
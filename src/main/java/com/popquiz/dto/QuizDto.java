@@ -15,4 +15,6 @@ public class QuizDto {
     private Integer timeLimit;
     private Long lectureId;
     private Integer questionCount;
+    // 来源内容修订后需要复核的题目数
+    private Integer staleQuestionCount;
 }
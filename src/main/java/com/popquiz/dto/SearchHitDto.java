@@ -0,0 +1,18 @@
+package com.popquiz.dto;
+
+import lombok.Data;
+
+/**
+ * 资料检索结果，snippet为带 &lt;em&gt; 高亮标记的片段
+ */
+@Data
+public class SearchHitDto {
+    private Long contentId;
+    private Long lectureId;
+    private String contentTitle;
+    private String kind;
+    private Integer sourceIndex;
+    private Integer sequenceNumber;
+    private Float score;
+    private String snippet;
+}
@@ -23,6 +23,9 @@ public class QuizMapper {
         }
 
         dto.setQuestionCount(quiz.getQuestions() == null ? 0 : quiz.getQuestions().size());
+        dto.setStaleQuestionCount(quiz.getQuestions() == null ? 0 : (int) quiz.getQuestions().stream()
+                .filter(question -> Boolean.TRUE.equals(question.getStale()))
+                .count());
         return dto;
     }
 
@@ -49,15 +49,44 @@ public class Content {
     // 文件大小（字节）
     private Long fileSize;
     
+    // 文件内容的SHA-256（十六进制）
+    @Column(length = 64)
+    private String contentHash;
+    
     // 处理状态
     @Enumerated(EnumType.STRING)
     @Column(nullable = false)
     private ProcessStatus processStatus = ProcessStatus.PENDING;
     
-    // 处理完成后提取的文本内容
+    // 处理完成后提取的文本内容（仅旧数据，新内容的文本保存在分段表中）
     @Column(columnDefinition = "TEXT")
     private String extractedText;
     
+    // 文本分段数，为null表示尚未分段存储
+    private Integer segmentCount;
+    
+    // 提取文本的总字符数
+    private Long textLength;
+    
+    // 规范化后文本的总字符数
+    private Long cleanTextLength;
+    
+    // 待处理的修订版本文件，处理成功后替换上面的当前文件，失败时丢弃；为null表示没有待处理的修订
+    private String revisionFilePath;
+    
+    private String revisionOriginalFilename;
+    
+    private String revisionMimeType;
+    
+    private Long revisionFileSize;
+    
+    @Column(length = 64)
+    private String revisionContentHash;
+    
+    @Enumerated(EnumType.STRING)
+    @Column(length = 20)
+    private ContentType revisionType;
+    
     // 处理中出现的错误信息
     private String errorMessage;
     
@@ -0,0 +1,40 @@
+package com.popquiz.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.time.LocalDateTime;
+
+/**
+ * 上传文件实体类
+ * 按内容哈希存储的文件，相同内容的多次上传共用一份文件，
+ * refCount记录引用该文件的内容数量
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "content_blobs")
+public class ContentBlob {
+
+    // 文件内容的SHA-256（十六进制）
+    @Id
+    @Column(length = 64)
+    private String hash;
+
+    // 文件存储路径
+    @Column(nullable = false)
+    private String filePath;
+
+    // 文件大小（字节）
+    @Column(nullable = false)
+    private Long fileSize;
+
+    // 引用该文件的内容数量
+    @Column(nullable = false)
+    private Integer refCount;
+
+    @Column(updatable = false)
+    private LocalDateTime createdAt;
+}
@@ -0,0 +1,70 @@
+package com.popquiz.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 内容分段实体类
+ * 提取出的文本按页、幻灯片或段落分段存储，按需读取指定范围，
+ * 列表接口不再携带整段文本
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "content_segments", indexes = {
+        @Index(name = "idx_segments_content_seq", columnList = "content_id, sequenceNumber")
+})
+public class ContentSegment {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "content_id", nullable = false)
+    @JsonIgnore
+    private Content content;
+
+    // 分段在内容中的顺序，从0开始
+    @Column(nullable = false)
+    private Integer sequenceNumber;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 20)
+    private SegmentKind kind;
+
+    // 来源页码/幻灯片编号/段落编号，从1开始；超长的页会拆成多个分段，共用同一编号
+    @Column(nullable = false)
+    private Integer sourceIndex;
+
+    // 分段在完整文本中的起始字符位置
+    @Column(nullable = false)
+    private Long charOffset;
+
+    // 分段字符数
+    @Column(nullable = false)
+    private Integer charLength;
+
+    // 提取出的原始文本
+    @Column(columnDefinition = "MEDIUMTEXT", nullable = false)
+    private String text;
+
+    // 去除页眉页脚、页码等重复内容并压缩空白后的文本，出题和检索使用；为null表示尚未规范化
+    @Column(columnDefinition = "MEDIUMTEXT")
+    private String cleanText;
+
+    // 分段文本的SHA-256（十六进制），重新处理时据此判断分段是否变化
+    @Column(length = 64)
+    private String fingerprint;
+
+    public enum SegmentKind {
+        PAGE,           // PDF页
+        SLIDE,          // 幻灯片
+        PARAGRAPH,      // 文本段落
+        BLOCK           // 无法细分的整块文本
+    }
+}
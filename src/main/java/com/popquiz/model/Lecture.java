@@ -70,6 +70,18 @@ public class Lecture {
     
     @Column(nullable = false)
     private boolean autoGenerateQuiz = true;
+
+    // 自动测验已认领的最近一个节点序号，只通过条件更新修改，保证集群中每个节点只生成一份草稿
+    @Column(nullable = false, insertable = false, updatable = false, columnDefinition = "INT NOT NULL DEFAULT 0")
+    private int autoQuizBoundary;
+
+    // 该节点预生成的草稿测验ID，生成完成前为空
+    @Column(insertable = false, updatable = false)
+    private Long autoQuizId;
+
+    // 讲座数据版本号，用于生成ETag；只通过 LectureRepository.incrementDataVersion 递增
+    @Column(nullable = false, insertable = false, updatable = false, columnDefinition = "BIGINT NOT NULL DEFAULT 0")
+    private long dataVersion;
     
     @Column(updatable = false)
     private LocalDateTime createdAt;
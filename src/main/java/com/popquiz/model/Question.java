@@ -52,6 +52,14 @@ public class Question {
     @OneToMany(mappedBy = "question", cascade = CascadeType.ALL)
     private List<DiscussionComment> comments = new ArrayList<>();
 
+    // 生成题目时使用的内容分段
+    @ElementCollection
+    @CollectionTable(name = "question_sources", joinColumns = @JoinColumn(name = "question_id"))
+    private List<QuestionSource> sources = new ArrayList<>();
+
+    // 来源分段在内容修订后发生变化，题目需要主讲人复核
+    private Boolean stale = false;
+
     private LocalDateTime createdAt;
 
     @PrePersist
@@ -0,0 +1,28 @@
+package com.popquiz.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Embeddable;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 题目来源分段
+ * 记录生成题目时使用的内容分段及其指纹，分段内容变化后可据此找到受影响的题目
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Embeddable
+public class QuestionSource {
+
+    @Column(nullable = false)
+    private Long contentId;
+
+    @Column(nullable = false)
+    private Integer sequenceNumber;
+
+    // 分段文本的SHA-256（十六进制）
+    @Column(nullable = false, length = 64)
+    private String fingerprint;
+}
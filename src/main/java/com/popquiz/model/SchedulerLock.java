@@ -0,0 +1,36 @@
+package com.popquiz.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.time.LocalDateTime;
+
+/**
+ * 定时任务锁实体类
+ * 多节点部署时，每个定时任务同一时刻只由持有租约的节点执行
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "scheduler_locks")
+public class SchedulerLock {
+
+    // 任务名称
+    @Id
+    @Column(length = 64)
+    private String name;
+
+    // 当前持有租约的节点
+    @Column(nullable = false)
+    private String owner;
+
+    // 租约到期时间，过期后其他节点可以接管
+    @Column(nullable = false)
+    private LocalDateTime lockedUntil;
+
+    // 最近一次获取或续约的时间
+    @Column(nullable = false)
+    private LocalDateTime lockedAt;
+}
@@ -0,0 +1,37 @@
+package com.popquiz.repository;
+
+import com.popquiz.model.ContentBlob;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+
+@Repository
+public interface ContentBlobRepository extends JpaRepository<ContentBlob, String> {
+
+    // 增加引用，返回更新行数，为0说明文件尚未登记
+    @Modifying
+    @Query("UPDATE ContentBlob b SET b.refCount = b.refCount + 1 WHERE b.hash = :hash")
+    int incrementRef(@Param("hash") String hash);
+
+    @Modifying
+    @Query("UPDATE ContentBlob b SET b.refCount = b.refCount - 1 WHERE b.hash = :hash AND b.refCount > 0")
+    int decrementRef(@Param("hash") String hash);
+
+    // 首次登记文件，主键冲突说明同一内容已被并发登记
+    @Modifying
+    @Query(value = "INSERT INTO content_blobs (hash, file_path, file_size, ref_count, created_at) " +
+            "VALUES (:hash, :filePath, :fileSize, 1, :now)", nativeQuery = true)
+    int insertBlob(@Param("hash") String hash,
+                   @Param("filePath") String filePath,
+                   @Param("fileSize") long fileSize,
+                   @Param("now") LocalDateTime now);
+
+    // 删除已无引用的文件记录，返回1时调用方负责删除磁盘文件
+    @Modifying
+    @Query("DELETE FROM ContentBlob b WHERE b.hash = :hash AND b.refCount <= 0")
+    int deleteIfUnreferenced(@Param("hash") String hash);
+}
@@ -3,8 +3,15 @@ package com.popquiz.repository;
 import com.popquiz.model.Content;
 import com.popquiz.model.Lecture;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 @Repository
 public interface ContentRepository extends JpaRepository<Content, Long> {
@@ -14,4 +21,41 @@ public interface ContentRepository extends JpaRepository<Content, Long> {
     List<Content> findByLectureAndType(Lecture lecture, Content.ContentType type);
     
     List<Content> findByLectureAndProcessStatus(Lecture lecture, Content.ProcessStatus processStatus);
+    
+    // 相同文件最近一次成功提取的内容，用于复用提取结果
+    Optional<Content> findFirstByContentHashAndTypeAndProcessStatusOrderByIdDesc(
+            String contentHash, Content.ContentType type, Content.ProcessStatus processStatus);
+    
+    @Query("SELECT c FROM Content c JOIN FETCH c.lecture WHERE c.id = :id")
+    Optional<Content> findWithLectureById(@Param("id") Long id);
+    
+    @Query("SELECT c FROM Content c JOIN FETCH c.lecture WHERE c.processStatus IN :statuses")
+    List<Content> findWithLectureByProcessStatusIn(@Param("statuses") Collection<Content.ProcessStatus> statuses);
+
+    // 把待处理的内容认领为处理中；返回0说明已被其他任务认领，重复提交的任务据此跳过
+    @Transactional
+    @Modifying
+    @Query("UPDATE Content c SET c.processStatus = :processing, c.processStartTime = :now, c.updatedAt = :now " +
+            "WHERE c.id = :id AND c.processStatus = :pending")
+    int claimForProcessing(@Param("id") Long id,
+                           @Param("pending") Content.ProcessStatus pending,
+                           @Param("processing") Content.ProcessStatus processing,
+                           @Param("now") LocalDateTime now);
+
+    // 处理过程中定期刷新更新时间，表明处理节点仍然存活
+    @Transactional
+    @Modifying
+    @Query("UPDATE Content c SET c.updatedAt = :now WHERE c.id = :id")
+    int touch(@Param("id") Long id, @Param("now") LocalDateTime now);
+
+    // 长时间没有进展的处理中内容（处理节点已宕机）退回待处理，只有一个节点能成功
+    @Transactional
+    @Modifying
+    @Query("UPDATE Content c SET c.processStatus = :pending, c.updatedAt = :now " +
+            "WHERE c.id = :id AND c.processStatus = :processing AND (c.updatedAt IS NULL OR c.updatedAt < :staleBefore)")
+    int requeueStale(@Param("id") Long id,
+                     @Param("processing") Content.ProcessStatus processing,
+                     @Param("pending") Content.ProcessStatus pending,
+                     @Param("staleBefore") LocalDateTime staleBefore,
+                     @Param("now") LocalDateTime now);
 } 
\ No newline at end of file
@@ -0,0 +1,75 @@
+package com.popquiz.repository;
+
+import com.popquiz.model.ContentSegment;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+@Repository
+public interface ContentSegmentRepository extends JpaRepository<ContentSegment, Long> {
+
+    // 按顺序读取从指定序号开始的分段
+    @Query("SELECT s FROM ContentSegment s WHERE s.content.id = :contentId AND s.sequenceNumber >= :from " +
+            "ORDER BY s.sequenceNumber")
+    List<ContentSegment> findRange(@Param("contentId") Long contentId, @Param("from") int from, Pageable pageable);
+
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM ContentSegment s WHERE s.content.id = :contentId")
+    int deleteByContentId(@Param("contentId") Long contentId);
+
+    // 只读取当前版本分段的位置和指纹，不加载文本
+    @Query("SELECT s.id AS id, s.sequenceNumber AS sequenceNumber, s.sourceIndex AS sourceIndex, " +
+            "s.charOffset AS charOffset, s.fingerprint AS fingerprint FROM ContentSegment s " +
+            "WHERE s.content.id = :contentId AND s.sequenceNumber >= 0 ORDER BY s.sequenceNumber")
+    List<SegmentFingerprint> findFingerprints(@Param("contentId") Long contentId);
+
+    // 修订版本中文本未变、位置变化的分段，只更新位置
+    @Transactional
+    @Modifying
+    @Query("UPDATE ContentSegment s SET s.sequenceNumber = :sequenceNumber, s.sourceIndex = :sourceIndex, " +
+            "s.charOffset = :charOffset WHERE s.id = :id")
+    int updatePosition(@Param("id") Long id,
+                       @Param("sequenceNumber") Integer sequenceNumber,
+                       @Param("sourceIndex") Integer sourceIndex,
+                       @Param("charOffset") Long charOffset);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE ContentSegment s SET s.cleanText = :cleanText WHERE s.id = :id")
+    int updateCleanText(@Param("id") Long id, @Param("cleanText") String cleanText);
+
+    // 暂存的修订分段序号为 -(序号+1)，修订成功后换成正式序号
+    @Transactional
+    @Modifying
+    @Query("UPDATE ContentSegment s SET s.sequenceNumber = -s.sequenceNumber - 1 " +
+            "WHERE s.content.id = :contentId AND s.sequenceNumber < 0")
+    int promoteStaged(@Param("contentId") Long contentId);
+
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM ContentSegment s WHERE s.content.id = :contentId AND s.sequenceNumber < 0")
+    int deleteStaged(@Param("contentId") Long contentId);
+
+    interface SegmentFingerprint {
+        Long getId();
+        Integer getSequenceNumber();
+        Integer getSourceIndex();
+        Long getCharOffset();
+        String getFingerprint();
+    }
+
+    // 相同文件的分段直接在数据库内复制，不经过应用内存
+    @Transactional
+    @Modifying
+    @Query(value = "INSERT INTO content_segments (content_id, sequence_number, kind, source_index, char_offset, char_length, text, clean_text, fingerprint) " +
+            "SELECT :toContentId, sequence_number, kind, source_index, char_offset, char_length, text, clean_text, fingerprint " +
+            "FROM content_segments WHERE content_id = :fromContentId AND sequence_number >= 0", nativeQuery = true)
+    int copySegments(@Param("fromContentId") Long fromContentId, @Param("toContentId") Long toContentId);
+}
@@ -3,9 +3,11 @@ package com.popquiz.repository;
 import com.popquiz.model.Lecture;
 import com.popquiz.model.User;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 import java.time.LocalDateTime;
 import java.util.List;
 
@@ -37,4 +39,34 @@ public interface LectureRepository extends JpaRepository<Lecture, Long> {
     long countByStatus(Lecture.LectureStatus status);
 
     List<Lecture> findTop5ByOrderByScheduledTimeDesc();
+
+    // 讲座数据变化时递增版本号，在调用方事务中执行，与数据修改一同提交
+    @Transactional
+    @Modifying
+    @Query("UPDATE Lecture l SET l.dataVersion = l.dataVersion + 1 WHERE l.id = :lectureId")
+    int incrementDataVersion(@Param("lectureId") Long lectureId);
+
+    @Query("SELECT l.dataVersion FROM Lecture l WHERE l.id = :lectureId")
+    Long findDataVersion(@Param("lectureId") Long lectureId);
+
+    // 认领自动测验节点，只有尚未认领该节点时才成功
+    @Transactional
+    @Modifying
+    @Query("UPDATE Lecture l SET l.autoQuizBoundary = :boundary, l.autoQuizId = null " +
+            "WHERE l.id = :lectureId AND l.autoQuizBoundary < :boundary")
+    int claimAutoQuizBoundary(@Param("lectureId") Long lectureId, @Param("boundary") int boundary);
+
+    // 记录已认领节点的草稿测验
+    @Transactional
+    @Modifying
+    @Query("UPDATE Lecture l SET l.autoQuizId = :quizId WHERE l.id = :lectureId AND l.autoQuizBoundary = :boundary")
+    int setAutoQuizId(@Param("lectureId") Long lectureId, @Param("boundary") int boundary, @Param("quizId") Long quizId);
+
+    // 生成失败时退回认领，下次检查时重试
+    @Transactional
+    @Modifying
+    @Query("UPDATE Lecture l SET l.autoQuizBoundary = :previous " +
+            "WHERE l.id = :lectureId AND l.autoQuizBoundary = :boundary AND l.autoQuizId IS NULL")
+    int releaseAutoQuizBoundary(@Param("lectureId") Long lectureId, @Param("boundary") int boundary,
+                                @Param("previous") int previous);
 }
\ No newline at end of file
@@ -3,7 +3,12 @@ package com.popquiz.repository;
 import com.popquiz.model.Question;
 import com.popquiz.model.Quiz;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import java.util.Collection;
 import java.util.List;
 
 @Repository
@@ -14,4 +19,27 @@ public interface QuestionRepository extends JpaRepository<Question, Long> {
     List<Question> findByQuizOrderBySequenceNumberAsc(Quiz quiz);
     
     int countByQuiz(Quiz quiz);
+    
+    // 标记来源分段已被修改或删除的题目，返回标记的题目数
+    @Transactional
+    @Modifying
+    @Query(value = "UPDATE questions SET stale = TRUE WHERE (stale IS NULL OR stale = FALSE) AND id IN " +
+            "(SELECT qs.question_id FROM question_sources qs WHERE qs.content_id = :contentId AND qs.fingerprint IN (:fingerprints))",
+            nativeQuery = true)
+    int markStaleBySources(@Param("contentId") Long contentId, @Param("fingerprints") Collection<String> fingerprints);
+    
+    // 修订后文本未变、位置变化的分段：先把来源序号改成 -(新序号+1)，全部改完后再换成正式序号，避免新旧序号互相覆盖
+    @Transactional
+    @Modifying
+    @Query(value = "UPDATE question_sources SET sequence_number = -:toSequence - 1 " +
+            "WHERE content_id = :contentId AND sequence_number = :fromSequence AND fingerprint = :fingerprint",
+            nativeQuery = true)
+    int moveSource(@Param("contentId") Long contentId, @Param("fromSequence") int fromSequence,
+                   @Param("toSequence") int toSequence, @Param("fingerprint") String fingerprint);
+    
+    @Transactional
+    @Modifying
+    @Query(value = "UPDATE question_sources SET sequence_number = -sequence_number - 1 " +
+            "WHERE content_id = :contentId AND sequence_number < 0", nativeQuery = true)
+    int settleMovedSources(@Param("contentId") Long contentId);
 } 
\ No newline at end of file
@@ -3,6 +3,7 @@ package com.popquiz.repository;
 import com.popquiz.model.Lecture;
 import com.popquiz.model.Quiz;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
@@ -30,4 +31,12 @@ public interface QuizRepository extends JpaRepository<Quiz, Long> {
 
     long countByStatus(Quiz.QuizStatus status);
 
+    // 仅当测验处于指定状态时才更新状态，返回更新行数，用于避免重复处理同一测验
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE Quiz q SET q.status = :target, q.updatedAt = :now WHERE q.id = :quizId AND q.status = :current")
+    int updateStatusIfCurrent(@Param("quizId") Long quizId,
+                              @Param("current") Quiz.QuizStatus current,
+                              @Param("target") Quiz.QuizStatus target,
+                              @Param("now") LocalDateTime now);
+
 }
@@ -0,0 +1,40 @@
+package com.popquiz.repository;
+
+import com.popquiz.model.SchedulerLock;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface SchedulerLockRepository extends JpaRepository<SchedulerLock, String> {
+
+    // 租约时间统一取数据库时钟，各节点之间的时钟偏差不会造成租约重叠
+
+    // 租约已过期或本节点已持有时获取/续约，返回更新行数
+    @Modifying
+    @Query(value = "UPDATE scheduler_locks SET owner = :owner, locked_at = CURRENT_TIMESTAMP(3), " +
+            "locked_until = TIMESTAMPADD(MICROSECOND, :leaseMs * 1000, CURRENT_TIMESTAMP(3)) " +
+            "WHERE name = :name AND (locked_until < CURRENT_TIMESTAMP(3) OR owner = :owner)",
+            nativeQuery = true)
+    int acquireLease(@Param("name") String name,
+                     @Param("owner") String owner,
+                     @Param("leaseMs") long leaseMs);
+
+    // 首次创建锁记录，主键冲突说明其他节点已抢先创建
+    @Modifying
+    @Query(value = "INSERT INTO scheduler_locks (name, owner, locked_until, locked_at) " +
+            "VALUES (:name, :owner, TIMESTAMPADD(MICROSECOND, :leaseMs * 1000, CURRENT_TIMESTAMP(3)), CURRENT_TIMESTAMP(3))",
+            nativeQuery = true)
+    int insertLease(@Param("name") String name,
+                    @Param("owner") String owner,
+                    @Param("leaseMs") long leaseMs);
+
+    // 释放本节点持有的全部租约
+    @Modifying
+    @Query(value = "UPDATE scheduler_locks SET locked_until = CURRENT_TIMESTAMP(3) " +
+            "WHERE owner = :owner AND locked_until > CURRENT_TIMESTAMP(3)",
+            nativeQuery = true)
+    int releaseAll(@Param("owner") String owner);
+}
@@ -0,0 +1,248 @@
+package com.popquiz.service;
+
+import com.popquiz.model.Lecture;
+import com.popquiz.model.Quiz;
+import com.popquiz.repository.LectureRepository;
+import com.popquiz.repository.QuizRepository;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 自动测验流水线
+ * 对开启 autoGenerateQuiz 的进行中讲座，按 quizInterval 划分测验节点，
+ * 在节点到来之前提前生成草稿测验，到点后直接发布并激活，AI生成的耗时不再落在开始测验的关键路径上；
+ * 节点的认领和草稿ID记录在讲座表中，锁切换到其他节点后由新节点接管已生成的草稿，不会重复生成
+ */
+@Service
+public class AutoQuizPipelineService {
+
+    private static final Logger logger = LoggerFactory.getLogger(AutoQuizPipelineService.class);
+
+    private final LectureRepository lectureRepository;
+    private final QuizRepository quizRepository;
+    private final QuizService quizService;
+    private final SchedulerLockService schedulerLockService;
+
+    // 生成与定时激活共用的线程池
+    private final ScheduledExecutorService executor = Executors.newScheduledThreadPool(2, r -> {
+        Thread thread = new Thread(r, "auto-quiz");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // 讲座ID -> 流水线状态
+    private final Map<Long, PipelineState> states = new ConcurrentHashMap<>();
+
+    // 节点前多少秒开始生成草稿
+    @Value("${quiz.auto.lead-time-seconds:180}")
+    private long leadTimeSeconds;
+
+    @Value("${quiz.auto.question-count:3}")
+    private int questionCount;
+
+    @Value("${quiz.auto.difficulty:2}")
+    private int difficultyLevel;
+
+    public AutoQuizPipelineService(
+            LectureRepository lectureRepository,
+            QuizRepository quizRepository,
+            QuizService quizService,
+            SchedulerLockService schedulerLockService) {
+        this.lectureRepository = lectureRepository;
+        this.quizRepository = quizRepository;
+        this.quizService = quizService;
+        this.schedulerLockService = schedulerLockService;
+    }
+
+    /**
+     * 定时检查进行中的讲座，为即将到来的测验节点提前生成草稿
+     */
+    @Scheduled(fixedDelayString = "${quiz.auto.poll-ms:15000}")
+    public void advance() {
+        // 集群中只由持有锁的节点生成和激活自动测验
+        if (!schedulerLockService.tryAcquire("auto-quiz-pipeline")) {
+            // 失去锁后放弃本节点已安排的激活，由新的持有者接管
+            cancelAll();
+            return;
+        }
+        long now = System.currentTimeMillis();
+        Set<Long> liveLectureIds = new HashSet<>();
+
+        for (Lecture lecture : lectureRepository.findByStatus(Lecture.LectureStatus.LIVE)) {
+            if (!lecture.isAutoGenerateQuiz() || lecture.getStartTime() == null
+                    || lecture.getQuizInterval() == null || lecture.getQuizInterval() <= 0) {
+                continue;
+            }
+            liveLectureIds.add(lecture.getId());
+
+            long startMs = QuizCountdownService.toEpochMillis(lecture.getStartTime());
+            long intervalMs = TimeUnit.MINUTES.toMillis(lecture.getQuizInterval());
+            int nextBoundary = (int) (Math.max(0, now - startMs) / intervalMs) + 1;
+            long boundaryMs = startMs + nextBoundary * intervalMs;
+
+            Long lectureId = lecture.getId();
+            PipelineState state = states.computeIfAbsent(lectureId, k -> new PipelineState());
+            synchronized (state) {
+                if (state.generating) {
+                    continue;
+                }
+                if (lecture.getAutoQuizBoundary() >= nextBoundary) {
+                    // 已认领：草稿已生成但本节点尚未安排激活（如刚接管锁）时补上激活任务；
+                    // 草稿ID为空说明仍在生成，或生成该草稿的节点已宕机，本节点不再重复生成
+                    Long quizId = lecture.getAutoQuizId();
+                    if (quizId != null && !quizId.equals(state.activationQuizId)) {
+                        scheduleActivation(state, lectureId, quizId, boundaryMs);
+                    }
+                    continue;
+                }
+                if (now < boundaryMs - TimeUnit.SECONDS.toMillis(leadTimeSeconds)) {
+                    continue;
+                }
+                if (lectureRepository.claimAutoQuizBoundary(lectureId, nextBoundary) == 0) {
+                    continue;
+                }
+                state.generating = true;
+            }
+            int previousBoundary = lecture.getAutoQuizBoundary();
+            executor.execute(() -> prepare(lectureId, nextBoundary, previousBoundary, boundaryMs));
+        }
+
+        // 已结束或关闭自动测验的讲座，取消尚未执行的激活任务
+        states.entrySet().removeIf(entry -> {
+            if (liveLectureIds.contains(entry.getKey())) {
+                return false;
+            }
+            cancelActivation(entry.getValue());
+            return true;
+        });
+    }
+
+    private void cancelAll() {
+        states.values().forEach(this::cancelActivation);
+        states.clear();
+    }
+
+    private void cancelActivation(PipelineState state) {
+        synchronized (state) {
+            if (state.activation != null) {
+                state.activation.cancel(false);
+            }
+        }
+    }
+
+    // 调用方持有state的锁
+    private void scheduleActivation(PipelineState state, Long lectureId, Long quizId, long boundaryMs) {
+        if (state.activation != null) {
+            state.activation.cancel(false);
+        }
+        long delayMs = Math.max(0, boundaryMs - System.currentTimeMillis());
+        state.activationQuizId = quizId;
+        state.activation = executor.schedule(() -> launch(lectureId, quizId), delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 生成草稿测验，并在节点时刻安排发布和激活
+     */
+    private void prepare(Long lectureId, int boundary, int previousBoundary, long boundaryMs) {
+        PipelineState state = states.get(lectureId);
+        if (state == null) {
+            lectureRepository.releaseAutoQuizBoundary(lectureId, boundary, previousBoundary);
+            return;
+        }
+        try {
+            Quiz draft = quizService.createQuizForLecture(
+                    lectureId, "自动测验 第" + boundary + "轮", questionCount, difficultyLevel);
+            logger.info("已为讲座 {} 预生成第 {} 轮测验草稿: quizId={}", lectureId, boundary, draft.getId());
+
+            Long quizId = draft.getId();
+            // 无论是否仍持有锁都记录草稿ID，接管的节点据此安排激活，不会把该节点当作宕机而跳过
+            lectureRepository.setAutoQuizId(lectureId, boundary, quizId);
+            synchronized (state) {
+                // 生成期间失去锁（状态已被清空）或讲座已结束时，不再由本节点安排激活
+                if (states.get(lectureId) != state) {
+                    logger.info("讲座 {} 的流水线已不归本节点负责，草稿 {} 交由接管节点激活", lectureId, quizId);
+                    return;
+                }
+                scheduleActivation(state, lectureId, quizId, boundaryMs);
+            }
+        } catch (Exception e) {
+            // 例如讲座暂无已处理内容，退回认领，下次检查时重试
+            logger.warn("讲座 {} 第 {} 轮测验预生成失败: {}", lectureId, boundary, e.getMessage());
+            lectureRepository.releaseAutoQuizBoundary(lectureId, boundary, previousBoundary);
+        } finally {
+            synchronized (state) {
+                state.generating = false;
+            }
+        }
+    }
+
+    /**
+     * 到达节点时发布并激活预生成的测验
+     */
+    private void launch(Long lectureId, Long quizId) {
+        PipelineState state = states.get(lectureId);
+        if (state == null) {
+            return;
+        }
+        synchronized (state) {
+            // 失去锁后取消的任务可能已经开始执行，此时不再激活
+            if (!quizId.equals(state.activationQuizId)) {
+                return;
+            }
+        }
+        try {
+            Lecture lecture = lectureRepository.findById(lectureId).orElse(null);
+            if (lecture == null || lecture.getStatus() != Lecture.LectureStatus.LIVE) {
+                return;
+            }
+            List<Quiz> activeQuizzes = quizRepository.findByLectureInAndStatus(List.of(lectureId), Quiz.QuizStatus.ACTIVE);
+            if (!activeQuizzes.isEmpty()) {
+                // 上一个测验仍在进行，保留草稿交由主讲人手动处理
+                logger.info("讲座 {} 仍有进行中的测验，自动测验 {} 保留为草稿", lectureId, quizId);
+                return;
+            }
+            Quiz quiz = quizRepository.findById(quizId).orElse(null);
+            if (quiz == null || quiz.getStatus() != Quiz.QuizStatus.DRAFT) {
+                return;
+            }
+            // 发布时按状态条件更新认领草稿，其他节点或主讲人已发布时不会重复激活
+            try {
+                quizService.publishQuiz(quizId, quiz.getTimeLimit());
+            } catch (RuntimeException e) {
+                logger.info("自动测验 {} 未能发布（可能已被其他节点或主讲人发布），跳过激活: {}", quizId, e.getMessage());
+                return;
+            }
+            quizService.activateQuiz(quizId);
+            logger.info("讲座 {} 的自动测验 {} 已激活", lectureId, quizId);
+        } catch (Exception e) {
+            logger.error("自动测验激活失败: lectureId={}, quizId={}", lectureId, quizId, e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private static class PipelineState {
+        private boolean generating;
+        // 本节点已安排激活的草稿测验
+        private Long activationQuizId;
+        private ScheduledFuture<?> activation;
+    }
+}
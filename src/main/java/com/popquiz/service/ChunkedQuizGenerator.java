@@ -0,0 +1,382 @@
+package com.popquiz.service;
+
+import com.popquiz.ai.HuggingFaceService;
+import com.popquiz.ai.QuizQuestion;
+import com.popquiz.model.Content;
+import com.popquiz.model.QuestionSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+
+/**
+ * 分块出题
+ * 讲座全文按token预算切块，题目数量按各块的文本量分配到各块，
+ * 各块并行调用模型（同一次生成同时进行的调用数有上限），结果去重后按讲座顺序合并；
+ * 总耗时接近一次小输入的调用，题目覆盖整个讲座而不只是开头几页
+ */
+@Service
+public class ChunkedQuizGenerator {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChunkedQuizGenerator.class);
+
+    // 两道题题干的字符二元组相似度达到该值即视为重复
+    private static final double DUPLICATE_SIMILARITY = 0.8;
+
+    private static final Pattern NON_WORD = Pattern.compile("[\\p{P}\\p{S}\\s]+");
+
+    private final HuggingFaceService huggingFaceService;
+    private final ContentSegmentService contentSegmentService;
+
+    // 每块出题文本的token预算
+    @Value("${quiz.generation.chunk-tokens:1500}")
+    private int chunkTokens;
+
+    // 一次生成最多调用模型的块数，块更多时把相邻块合并，每次调用的文本相应变长
+    @Value("${quiz.generation.max-chunks:8}")
+    private int maxChunks;
+
+    // 一次生成同时进行的模型调用数
+    @Value("${quiz.generation.parallelism:4}")
+    private int parallelism;
+
+    public ChunkedQuizGenerator(HuggingFaceService huggingFaceService,
+                                ContentSegmentService contentSegmentService) {
+        this.huggingFaceService = huggingFaceService;
+        this.contentSegmentService = contentSegmentService;
+    }
+
+    /**
+     * 把讲座内容切成符合token预算的出题文本块
+     */
+    public List<ContentSegmentService.SourceText> split(List<Content> contents) {
+        return contentSegmentService.loadChunks(contents, chunkTokens);
+    }
+
+    /**
+     * 按块并行出题并合并；listener（可为null）收到的是去重并计入配额后的题目。
+     * 部分块失败时用其余块的结果，全部失败时返回第一个错误
+     */
+    public CompletableFuture<Result> generateAsync(List<ContentSegmentService.SourceText> chunks, int questionCount,
+                                                   int difficultyLevel, Consumer<QuizQuestion> listener) {
+        List<ContentSegmentService.SourceText> selected = merge(chunks, Math.min(questionCount, maxChunks));
+        if (selected.isEmpty()) {
+            return CompletableFuture.failedFuture(new RuntimeException("暂无可用于生成测验的讲座内容"));
+        }
+        int[] quotas = allocate(selected, questionCount);
+        return new Run(selected, quotas, difficultyLevel, new Merger(selected, quotas, questionCount, listener)).start();
+    }
+
+    /**
+     * 块数超过上限时按文本量把相邻块合并成 limit 组，每段内容都会出现在某次调用中，不会整块丢弃
+     */
+    static List<ContentSegmentService.SourceText> merge(List<ContentSegmentService.SourceText> chunks, int limit) {
+        if (chunks.size() <= limit) {
+            return chunks;
+        }
+        int[] tokens = new int[chunks.size()];
+        long totalTokens = 0;
+        for (int i = 0; i < chunks.size(); i++) {
+            tokens[i] = Math.max(1, ContentSegmentService.estimateTokens(chunks.get(i).getText()));
+            totalTokens += tokens[i];
+        }
+        List<ContentSegmentService.SourceText> merged = new ArrayList<>(limit);
+        int start = 0;
+        long cumulative = 0;
+        for (int group = 0; group < limit; group++) {
+            long target = totalTokens * (group + 1) / limit;
+            // 每组至少一块，并给后面的组各留至少一块
+            int lastEnd = chunks.size() - (limit - group - 1);
+            int end = start;
+            do {
+                cumulative += tokens[end++];
+            } while (end < lastEnd && cumulative < target);
+            merged.add(join(chunks.subList(start, end)));
+            start = end;
+        }
+        return merged;
+    }
+
+    private static ContentSegmentService.SourceText join(List<ContentSegmentService.SourceText> chunks) {
+        if (chunks.size() == 1) {
+            return chunks.get(0);
+        }
+        StringBuilder text = new StringBuilder();
+        List<QuestionSource> sources = new ArrayList<>();
+        for (ContentSegmentService.SourceText chunk : chunks) {
+            if (text.length() > 0) {
+                text.append("\n\n");
+            }
+            text.append(chunk.getText());
+            sources.addAll(chunk.getSources());
+        }
+        return new ContentSegmentService.SourceText(text.toString(), sources);
+    }
+
+    /**
+     * 每块至少一题，其余按文本量以最大余数法分配
+     */
+    static int[] allocate(List<ContentSegmentService.SourceText> chunks, int questionCount) {
+        int[] quotas = new int[chunks.size()];
+        int[] tokens = new int[chunks.size()];
+        long totalTokens = 0;
+        for (int i = 0; i < chunks.size(); i++) {
+            quotas[i] = 1;
+            tokens[i] = Math.max(1, ContentSegmentService.estimateTokens(chunks.get(i).getText()));
+            totalTokens += tokens[i];
+        }
+        int remaining = Math.max(0, questionCount - chunks.size());
+        double[] remainders = new double[chunks.size()];
+        int assigned = 0;
+        for (int i = 0; i < chunks.size(); i++) {
+            double share = (double) remaining * tokens[i] / totalTokens;
+            quotas[i] += (int) share;
+            assigned += (int) share;
+            remainders[i] = share - (int) share;
+        }
+        for (; assigned < remaining; assigned++) {
+            int best = 0;
+            for (int i = 1; i < remainders.length; i++) {
+                if (remainders[i] > remainders[best]) {
+                    best = i;
+                }
+            }
+            quotas[best]++;
+            remainders[best] = -1;
+        }
+        return quotas;
+    }
+
+    /**
+     * 一次分块生成：先启动不超过并行上限的调用，每完成一块再启动下一块；
+     * 取消返回的future时不再启动新块，并取消进行中的调用
+     */
+    private class Run {
+        private final List<ContentSegmentService.SourceText> chunks;
+        private final int[] quotas;
+        private final int difficultyLevel;
+        private final Merger merger;
+        private final CompletableFuture<Result> result = new CompletableFuture<>();
+        private final AtomicInteger next = new AtomicInteger();
+        private final AtomicInteger finished = new AtomicInteger();
+        private final Set<CompletableFuture<List<QuizQuestion>>> calls = ConcurrentHashMap.newKeySet();
+        private volatile Throwable firstError;
+
+        Run(List<ContentSegmentService.SourceText> chunks, int[] quotas, int difficultyLevel, Merger merger) {
+            this.chunks = chunks;
+            this.quotas = quotas;
+            this.difficultyLevel = difficultyLevel;
+            this.merger = merger;
+        }
+
+        CompletableFuture<Result> start() {
+            result.whenComplete((merged, error) -> {
+                if (result.isCancelled()) {
+                    calls.forEach(call -> call.cancel(true));
+                }
+            });
+            for (int i = 0; i < Math.min(Math.max(1, parallelism), chunks.size()); i++) {
+                launchNext();
+            }
+            return result;
+        }
+
+        private void launchNext() {
+            if (result.isDone()) {
+                return;
+            }
+            int index = next.getAndIncrement();
+            if (index >= chunks.size()) {
+                return;
+            }
+            // 多块时每块多要一题，去重后仍能凑够配额
+            int requested = quotas[index] + (chunks.size() > 1 ? 1 : 0);
+            CompletableFuture<List<QuizQuestion>> call;
+            try {
+                call = huggingFaceService.generateQuizQuestionsAsync(chunks.get(index).getText(), requested,
+                        difficultyLevel, question -> merger.offer(index, question));
+            } catch (RuntimeException e) {
+                call = CompletableFuture.failedFuture(e);
+            }
+            calls.add(call);
+            if (result.isCancelled()) {
+                call.cancel(true);
+            }
+            CompletableFuture<List<QuizQuestion>> started = call;
+            call.whenComplete((questions, error) -> {
+                calls.remove(started);
+                if (result.isDone()) {
+                    return;
+                }
+                if (error != null) {
+                    Throwable cause = error instanceof CompletionException && error.getCause() != null
+                            ? error.getCause() : error;
+                    logger.warn("第{}块出题失败: {}", index + 1, cause.getMessage());
+                    if (firstError == null) {
+                        firstError = cause;
+                    }
+                }
+                if (finished.incrementAndGet() == chunks.size()) {
+                    complete();
+                } else {
+                    launchNext();
+                }
+            });
+        }
+
+        private void complete() {
+            Result merged = merger.finish();
+            if (merged.getQuestions().isEmpty() && firstError != null) {
+                result.completeExceptionally(firstError);
+            } else {
+                result.complete(merged);
+            }
+        }
+    }
+
+    /**
+     * 合并各块的题目：与已收到的题目重复的丢弃，每块按配额收下，超出配额的留作备用，
+     * 全部完成后用备用题补足其他块的缺额
+     */
+    private static class Merger {
+        private final List<ContentSegmentService.SourceText> chunks;
+        private final int[] quotas;
+        private final int[] accepted;
+        private final int questionCount;
+        private final Consumer<QuizQuestion> listener;
+        private final List<Candidate> kept = new ArrayList<>();
+        private final List<Candidate> spares = new ArrayList<>();
+        private int arrival;
+
+        Merger(List<ContentSegmentService.SourceText> chunks, int[] quotas, int questionCount,
+               Consumer<QuizQuestion> listener) {
+            this.chunks = chunks;
+            this.quotas = quotas;
+            this.accepted = new int[quotas.length];
+            this.questionCount = questionCount;
+            this.listener = listener;
+        }
+
+        synchronized void offer(int chunk, QuizQuestion question) {
+            if (question.getContent() == null || question.getContent().isBlank()) {
+                return;
+            }
+            Candidate candidate = new Candidate(chunk, arrival++, question);
+            if (isDuplicate(candidate, kept) || isDuplicate(candidate, spares)) {
+                return;
+            }
+            if (accepted[chunk] < quotas[chunk]) {
+                accepted[chunk]++;
+                accept(candidate);
+            } else {
+                spares.add(candidate);
+            }
+        }
+
+        synchronized Result finish() {
+            spares.sort(Comparator.comparingInt((Candidate c) -> c.chunk).thenComparingInt(c -> c.arrival));
+            for (Candidate spare : spares) {
+                if (kept.size() >= questionCount) {
+                    break;
+                }
+                accept(spare);
+            }
+            kept.sort(Comparator.comparingInt((Candidate c) -> c.chunk).thenComparingInt(c -> c.arrival));
+            Result result = new Result();
+            for (Candidate candidate : kept) {
+                result.questions.add(candidate.question);
+                result.questionSources.add(List.copyOf(chunks.get(candidate.chunk).getSources()));
+            }
+            return result;
+        }
+
+        private void accept(Candidate candidate) {
+            kept.add(candidate);
+            if (listener != null) {
+                listener.accept(candidate.question);
+            }
+        }
+
+        private boolean isDuplicate(Candidate candidate, List<Candidate> existing) {
+            for (Candidate other : existing) {
+                if (similarity(candidate.bigrams, other.bigrams) >= DUPLICATE_SIMILARITY) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private static class Candidate {
+        private final int chunk;
+        private final int arrival;
+        private final QuizQuestion question;
+        private final Set<String> bigrams;
+
+        Candidate(int chunk, int arrival, QuizQuestion question) {
+            this.chunk = chunk;
+            this.arrival = arrival;
+            this.question = question;
+            this.bigrams = bigrams(question.getContent());
+        }
+    }
+
+    /**
+     * 去掉标点和空白后的字符二元组，中英文题干都适用
+     */
+    static Set<String> bigrams(String text) {
+        String normalized = NON_WORD.matcher(text).replaceAll("").toLowerCase(Locale.ROOT);
+        Set<String> bigrams = new HashSet<>();
+        if (normalized.length() < 2) {
+            bigrams.add(normalized);
+            return bigrams;
+        }
+        for (int i = 0; i + 2 <= normalized.length(); i++) {
+            bigrams.add(normalized.substring(i, i + 2));
+        }
+        return bigrams;
+    }
+
+    // Jaccard相似度
+    static double similarity(Set<String> a, Set<String> b) {
+        if (a.isEmpty() && b.isEmpty()) {
+            return 1;
+        }
+        int common = 0;
+        for (String gram : a) {
+            if (b.contains(gram)) {
+                common++;
+            }
+        }
+        return (double) common / (a.size() + b.size() - common);
+    }
+
+    /**
+     * 合并后的题目，按讲座顺序排列；每道题附带其所在块的来源分段
+     */
+    public static class Result {
+        private final List<QuizQuestion> questions = new ArrayList<>();
+        private final List<List<QuestionSource>> questionSources = new ArrayList<>();
+
+        public List<QuizQuestion> getQuestions() {
+            return questions;
+        }
+
+        public List<List<QuestionSource>> getQuestionSources() {
+            return questionSources;
+        }
+    }
+}
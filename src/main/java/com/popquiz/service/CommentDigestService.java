@@ -0,0 +1,79 @@
+package com.popquiz.service;
+
+import com.popquiz.model.DiscussionComment;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 评论摘要服务
+ * 将同一问题在短时间窗口内的新评论合并为一条通知，
+ * 通知中携带评论内容，客户端可直接追加，无需重新拉取评论列表
+ */
+@Service
+public class CommentDigestService {
+
+    private final NotificationService notificationService;
+
+    // 问题ID -> 尚未推送的评论
+    private final Map<Long, List<Map<String, Object>>> pending = new ConcurrentHashMap<>();
+
+    public CommentDigestService(NotificationService notificationService) {
+        this.notificationService = notificationService;
+    }
+
+    /**
+     * 登记一条已保存的评论，等待下一个窗口统一推送；
+     * 在事务中调用时等事务提交后才登记，回滚的评论不会被推送
+     */
+    public void enqueue(DiscussionComment comment, Long userId, String username) {
+        Map<String, Object> item = new HashMap<>();
+        item.put("id", comment.getId());
+        item.put("parentId", comment.getParent() != null ? comment.getParent().getId() : null);
+        item.put("userId", userId);
+        item.put("username", username);
+        item.put("content", comment.getContent());
+        item.put("createdAt", comment.getCreatedAt());
+        Long questionId = comment.getQuestion().getId();
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    add(questionId, item);
+                }
+            });
+        } else {
+            add(questionId, item);
+        }
+    }
+
+    private void add(Long questionId, Map<String, Object> item) {
+        // 在compute内追加，保证与flush中的remove互斥，不会丢失评论
+        pending.compute(questionId, (k, list) -> {
+            List<Map<String, Object>> comments = list != null ? list : new ArrayList<>();
+            comments.add(item);
+            return comments;
+        });
+    }
+
+    /**
+     * 按窗口推送每个问题累积的评论
+     */
+    @Scheduled(fixedDelayString = "${comment.digest-window-ms:500}")
+    public void flush() {
+        for (Long questionId : pending.keySet()) {
+            List<Map<String, Object>> comments = pending.remove(questionId);
+            if (comments != null && !comments.isEmpty()) {
+                notificationService.broadcastCommentDigest(questionId, comments);
+            }
+        }
+    }
+}
@@ -0,0 +1,349 @@
+package com.popquiz.service;
+
+import com.popquiz.dto.SearchHitDto;
+import com.popquiz.model.Content;
+import com.popquiz.model.ContentSegment;
+import com.popquiz.model.QuestionSource;
+import com.popquiz.repository.ContentRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.cn.smart.SmartChineseAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.IntPoint;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.queryparser.simple.SimpleQueryParser;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.search.TermInSetQuery;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.highlight.Highlighter;
+import org.apache.lucene.search.highlight.QueryScorer;
+import org.apache.lucene.search.highlight.SimpleHTMLEncoder;
+import org.apache.lucene.search.highlight.SimpleHTMLFormatter;
+import org.apache.lucene.search.highlight.SimpleSpanFragmenter;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.BytesRef;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 讲座资料全文索引服务
+ * 在本地磁盘维护Lucene倒排索引，每个内容分段对应一个文档；
+ * 内容处理完成后增量更新，用于资料检索和出题时挑选相关段落
+ */
+@Service
+public class ContentIndexService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ContentIndexService.class);
+
+    // 索引文档结构版本，变化时清空索引并在启动后重建
+    private static final String INDEX_VERSION = "3";
+    private static final String COMMIT_KEY_VERSION = "version";
+
+    private static final String FIELD_SEGMENT_KEY = "segmentKey";
+    private static final String FIELD_CONTENT_ID = "contentId";
+    private static final String FIELD_LECTURE_ID = "lectureId";
+    private static final String FIELD_TITLE = "title";
+    private static final String FIELD_KIND = "kind";
+    private static final String FIELD_SOURCE_INDEX = "sourceIndex";
+    private static final String FIELD_SEQUENCE = "sequenceNumber";
+    private static final String FIELD_FINGERPRINT = "fingerprint";
+    private static final String FIELD_TEXT = "text";
+
+    // 按批读取分段写入索引
+    private static final int SEGMENT_BATCH = 50;
+
+    // 高亮片段的大致长度
+    private static final int SNIPPET_CHARS = 160;
+
+    private final ContentRepository contentRepository;
+    private final ContentSegmentService contentSegmentService;
+    private final ContentIngestionExecutor ingestionExecutor;
+    private final Analyzer analyzer = new SmartChineseAnalyzer();
+
+    @Value("${search.index-path:./search-index}")
+    private String indexPath;
+
+    private FSDirectory directory;
+    private IndexWriter writer;
+    private SearcherManager searcherManager;
+
+    public ContentIndexService(ContentRepository contentRepository,
+                               ContentSegmentService contentSegmentService,
+                               ContentIngestionExecutor ingestionExecutor) {
+        this.contentRepository = contentRepository;
+        this.contentSegmentService = contentSegmentService;
+        this.ingestionExecutor = ingestionExecutor;
+    }
+
+    @PostConstruct
+    public void open() throws IOException {
+        directory = FSDirectory.open(Paths.get(indexPath));
+        writer = new IndexWriter(directory, new IndexWriterConfig(analyzer)
+                .setOpenMode(IndexWriterConfig.OpenMode.CREATE_OR_APPEND));
+        if (!INDEX_VERSION.equals(commitVersion())) {
+            writer.deleteAll();
+            writer.setLiveCommitData(Map.of(COMMIT_KEY_VERSION, INDEX_VERSION).entrySet());
+            writer.commit();
+        }
+        searcherManager = new SearcherManager(writer, null);
+    }
+
+    private String commitVersion() {
+        Iterable<Map.Entry<String, String>> commitData = writer.getLiveCommitData();
+        if (commitData != null) {
+            for (Map.Entry<String, String> entry : commitData) {
+                if (COMMIT_KEY_VERSION.equals(entry.getKey())) {
+                    return entry.getValue();
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 索引为空（首次启用或索引目录被清理）时，在内容处理线程池中重建已完成内容的索引
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuildIfEmpty() {
+        if (writer.getDocStats().numDocs > 0) {
+            return;
+        }
+        List<Content> contents = contentRepository.findWithLectureByProcessStatusIn(
+                List.of(Content.ProcessStatus.COMPLETED));
+        for (Content content : contents) {
+            if (content.getSegmentCount() == null) {
+                continue;
+            }
+            try {
+                ingestionExecutor.submit(ContentIngestionExecutor.PRIORITY_RETRY, () -> indexContent(content));
+            } catch (Exception e) {
+                logger.warn("重建索引任务提交失败: contentId={}, {}", content.getId(), e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 重新索引一个内容的全部分段，先删除该内容已有的文档
+     */
+    public void indexContent(Content content) {
+        String contentId = String.valueOf(content.getId());
+        try {
+            writer.deleteDocuments(new Term(FIELD_CONTENT_ID, contentId));
+            int from = 0;
+            while (true) {
+                List<ContentSegment> segments = contentSegmentService.getRange(content.getId(), from, SEGMENT_BATCH);
+                for (ContentSegment segment : segments) {
+                    writer.addDocument(toDocument(content, segment));
+                }
+                if (segments.size() < SEGMENT_BATCH) {
+                    break;
+                }
+                from = segments.get(segments.size() - 1).getSequenceNumber() + 1;
+            }
+            writer.commit();
+            searcherManager.maybeRefresh();
+        } catch (IOException e) {
+            logger.error("索引内容失败: contentId={}", contentId, e);
+        }
+    }
+
+    /**
+     * 内容修订后只更新变化的分段，并删除超出新分段数的旧文档
+     */
+    public void updateSegments(Content content, List<Integer> changedSequences, int segmentCount) {
+        try {
+            for (Integer sequence : changedSequences) {
+                List<ContentSegment> segments = contentSegmentService.getRange(content.getId(), sequence, 1);
+                if (!segments.isEmpty() && segments.get(0).getSequenceNumber().equals(sequence)) {
+                    writer.updateDocument(new Term(FIELD_SEGMENT_KEY, segmentKey(content.getId(), sequence)),
+                            toDocument(content, segments.get(0)));
+                }
+            }
+            writer.deleteDocuments(new BooleanQuery.Builder()
+                    .add(new TermQuery(new Term(FIELD_CONTENT_ID, String.valueOf(content.getId()))), BooleanClause.Occur.FILTER)
+                    .add(IntPoint.newRangeQuery(FIELD_SEQUENCE, segmentCount, Integer.MAX_VALUE), BooleanClause.Occur.FILTER)
+                    .build());
+            writer.commit();
+            searcherManager.maybeRefresh();
+        } catch (IOException e) {
+            logger.error("更新索引失败: contentId={}", content.getId(), e);
+        }
+    }
+
+    public void deleteContent(Long contentId) {
+        try {
+            writer.deleteDocuments(new Term(FIELD_CONTENT_ID, String.valueOf(contentId)));
+            writer.commit();
+            searcherManager.maybeRefresh();
+        } catch (IOException e) {
+            logger.error("删除索引失败: contentId={}", contentId, e);
+        }
+    }
+
+    /**
+     * 在指定讲座范围内检索，返回带高亮片段的命中结果
+     */
+    public List<SearchHitDto> search(Collection<Long> lectureIds, String keywords, int limit) {
+        Query query = buildQuery(lectureIds, keywords);
+        if (query == null) {
+            return List.of();
+        }
+        List<SearchHitDto> hits = new ArrayList<>();
+        try {
+            IndexSearcher searcher = searcherManager.acquire();
+            try {
+                TopDocs topDocs = searcher.search(query, limit);
+                // 片段切分器需与高亮器共用同一个打分器
+                QueryScorer scorer = new QueryScorer(query, FIELD_TEXT);
+                Highlighter highlighter = new Highlighter(
+                        new SimpleHTMLFormatter("<em>", "</em>"), new SimpleHTMLEncoder(), scorer);
+                highlighter.setTextFragmenter(new SimpleSpanFragmenter(scorer, SNIPPET_CHARS));
+                for (ScoreDoc scoreDoc : topDocs.scoreDocs) {
+                    Document doc = searcher.storedFields().document(scoreDoc.doc);
+                    String text = doc.get(FIELD_TEXT);
+                    String snippet = highlighter.getBestFragment(analyzer, FIELD_TEXT, text);
+
+                    SearchHitDto hit = new SearchHitDto();
+                    hit.setContentId(Long.valueOf(doc.get(FIELD_CONTENT_ID)));
+                    hit.setLectureId(Long.valueOf(doc.get(FIELD_LECTURE_ID)));
+                    hit.setContentTitle(doc.get(FIELD_TITLE));
+                    hit.setKind(doc.get(FIELD_KIND));
+                    hit.setSourceIndex(doc.getField(FIELD_SOURCE_INDEX).numericValue().intValue());
+                    hit.setSequenceNumber(doc.getField(FIELD_SEQUENCE).numericValue().intValue());
+                    hit.setScore(scoreDoc.score);
+                    hit.setSnippet(snippet != null ? snippet : text.substring(0, Math.min(text.length(), SNIPPET_CHARS)));
+                    hits.add(hit);
+                }
+            } finally {
+                searcherManager.release(searcher);
+            }
+        } catch (Exception e) {
+            logger.error("检索失败: keywords={}", keywords, e);
+            throw new RuntimeException("检索失败");
+        }
+        return hits;
+    }
+
+    /**
+     * 按关键词挑选与之最相关的段落，按原文顺序拼接到maxChars为止；
+     * 没有命中时返回空文本，由调用方回退到顺序读取
+     */
+    public ContentSegmentService.SourceText retrievePassages(Long lectureId, String keywords, int maxChars) {
+        ContentSegmentService.SourceText empty = new ContentSegmentService.SourceText("", List.of());
+        Query query = buildQuery(List.of(lectureId), keywords);
+        if (query == null) {
+            return empty;
+        }
+        List<Document> passages = new ArrayList<>();
+        try {
+            IndexSearcher searcher = searcherManager.acquire();
+            try {
+                int used = 0;
+                for (ScoreDoc scoreDoc : searcher.search(query, SEGMENT_BATCH).scoreDocs) {
+                    Document doc = searcher.storedFields().document(scoreDoc.doc);
+                    passages.add(doc);
+                    used += doc.get(FIELD_TEXT).length();
+                    if (used >= maxChars) {
+                        break;
+                    }
+                }
+            } finally {
+                searcherManager.release(searcher);
+            }
+        } catch (IOException e) {
+            logger.error("检索段落失败: lectureId={}", lectureId, e);
+            return empty;
+        }
+
+        passages.sort(Comparator
+                .comparingLong((Document doc) -> Long.parseLong(doc.get(FIELD_CONTENT_ID)))
+                .thenComparingInt(doc -> doc.getField(FIELD_SEQUENCE).numericValue().intValue()));
+        StringBuilder text = new StringBuilder();
+        List<QuestionSource> sources = new ArrayList<>();
+        for (Document doc : passages) {
+            if (text.length() > 0) {
+                text.append("\n\n");
+            }
+            text.append(doc.get(FIELD_TEXT));
+            sources.add(new QuestionSource(Long.valueOf(doc.get(FIELD_CONTENT_ID)),
+                    doc.getField(FIELD_SEQUENCE).numericValue().intValue(), doc.get(FIELD_FINGERPRINT)));
+        }
+        if (text.length() > maxChars) {
+            text.setLength(maxChars);
+        }
+        return new ContentSegmentService.SourceText(text.toString(), sources);
+    }
+
+    private Query buildQuery(Collection<Long> lectureIds, String keywords) {
+        if (keywords == null || keywords.isBlank() || lectureIds.isEmpty()) {
+            return null;
+        }
+        SimpleQueryParser parser = new SimpleQueryParser(analyzer, FIELD_TEXT);
+        // 中文词会被切成多个词元，默认要求全部命中
+        parser.setDefaultOperator(BooleanClause.Occur.MUST);
+        Query keywordQuery = parser.parse(keywords);
+        if (keywordQuery == null) {
+            return null;
+        }
+        List<BytesRef> terms = lectureIds.stream().map(id -> new BytesRef(String.valueOf(id))).toList();
+        return new BooleanQuery.Builder()
+                .add(keywordQuery, BooleanClause.Occur.MUST)
+                .add(new TermInSetQuery(FIELD_LECTURE_ID, terms), BooleanClause.Occur.FILTER)
+                .build();
+    }
+
+    private Document toDocument(Content content, ContentSegment segment) {
+        Document doc = new Document();
+        doc.add(new StringField(FIELD_SEGMENT_KEY, segmentKey(content.getId(), segment.getSequenceNumber()), Field.Store.NO));
+        doc.add(new StringField(FIELD_CONTENT_ID, String.valueOf(content.getId()), Field.Store.YES));
+        doc.add(new StringField(FIELD_LECTURE_ID, String.valueOf(content.getLecture().getId()), Field.Store.YES));
+        doc.add(new StoredField(FIELD_TITLE, content.getTitle() != null ? content.getTitle() : ""));
+        doc.add(new StoredField(FIELD_KIND, segment.getKind().name()));
+        doc.add(new StoredField(FIELD_SOURCE_INDEX, segment.getSourceIndex()));
+        doc.add(new IntPoint(FIELD_SEQUENCE, segment.getSequenceNumber()));
+        doc.add(new StoredField(FIELD_SEQUENCE, segment.getSequenceNumber()));
+        doc.add(new StoredField(FIELD_FINGERPRINT, segment.getFingerprint() != null ? segment.getFingerprint() : ""));
+        doc.add(new TextField(FIELD_TEXT, ContentSegmentService.promptText(segment), Field.Store.YES));
+        return doc;
+    }
+
+    private String segmentKey(Long contentId, int sequenceNumber) {
+        return contentId + ":" + sequenceNumber;
+    }
+
+    @PreDestroy
+    public void close() {
+        try {
+            searcherManager.close();
+            writer.close();
+            directory.close();
+        } catch (IOException e) {
+            logger.warn("关闭索引失败: {}", e.getMessage());
+        }
+    }
+}
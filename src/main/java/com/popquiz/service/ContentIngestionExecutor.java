@@ -0,0 +1,133 @@
+package com.popquiz.service;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 内容处理线程池
+ * 上传请求只负责入队，文本提取在独立的工作线程上执行；
+ * 队列有上限，进行中讲座的内容优先处理，同优先级按提交顺序执行
+ */
+@Service
+public class ContentIngestionExecutor {
+
+    public static final int PRIORITY_LIVE = 0;
+    public static final int PRIORITY_NORMAL = 1;
+    public static final int PRIORITY_RETRY = 2;
+
+    private final ThreadPoolExecutor executor;
+    private final PriorityBlockingQueue<Runnable> queue = new PriorityBlockingQueue<>();
+    private final AtomicLong sequence = new AtomicLong();
+    // 本节点排队或执行中的内容ID -> 任务数
+    private final Map<Long, Integer> queuedContent = new ConcurrentHashMap<>();
+    private final int queueCapacity;
+
+    public ContentIngestionExecutor(
+            @Value("${content.ingestion.workers:2}") int workers,
+            @Value("${content.ingestion.queue-capacity:100}") int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(workers, workers, 60, TimeUnit.SECONDS, queue, r -> {
+            Thread thread = new Thread(r, "content-ingestion-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 提交处理任务，队列已满时抛出异常，由调用方提示用户稍后重试
+     */
+    public void submit(int priority, Runnable task) {
+        submit(priority, null, task);
+    }
+
+    /**
+     * 提交某个内容的处理任务，任务结束前可通过 isQueued 查到该内容
+     */
+    public void submit(int priority, Long contentId, Runnable task) {
+        if (!trySubmit(priority, contentId, task)) {
+            throw new RuntimeException("内容处理队列已满，请稍后重试");
+        }
+    }
+
+    /**
+     * 同上，队列已满时返回false，由调用方稍后再提交
+     */
+    public boolean trySubmit(int priority, Long contentId, Runnable task) {
+        if (queue.size() >= queueCapacity) {
+            return false;
+        }
+        if (contentId != null) {
+            queuedContent.merge(contentId, 1, Integer::sum);
+        }
+        try {
+            executor.execute(new PrioritizedTask(priority, sequence.incrementAndGet(), () -> {
+                try {
+                    task.run();
+                } finally {
+                    if (contentId != null) {
+                        queuedContent.computeIfPresent(contentId, (id, count) -> count > 1 ? count - 1 : null);
+                    }
+                }
+            }));
+        } catch (RuntimeException e) {
+            if (contentId != null) {
+                queuedContent.computeIfPresent(contentId, (id, count) -> count > 1 ? count - 1 : null);
+            }
+            throw e;
+        }
+        return true;
+    }
+
+    /**
+     * 该内容是否有任务在本节点排队或执行中
+     */
+    public boolean isQueued(Long contentId) {
+        return queuedContent.containsKey(contentId);
+    }
+
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private static class PrioritizedTask implements Runnable, Comparable<PrioritizedTask> {
+        private final int priority;
+        private final long sequence;
+        private final Runnable task;
+
+        PrioritizedTask(int priority, long sequence, Runnable task) {
+            this.priority = priority;
+            this.sequence = sequence;
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            task.run();
+        }
+
+        @Override
+        public int compareTo(PrioritizedTask other) {
+            int byPriority = Integer.compare(priority, other.priority);
+            return byPriority != 0 ? byPriority : Long.compare(sequence, other.sequence);
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package com.popquiz.service;
+
+import com.popquiz.model.ContentSegment;
+import com.popquiz.repository.ContentSegmentRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * 文本规范化服务
+ * 提取完成后对分段再做一遍处理：识别在多数页/幻灯片上重复出现的页眉页脚，
+ * 去掉页码和幻灯片编号行，压缩空白；原始文本保留在 text 中，规范化结果写入 cleanText，
+ * 出题和检索使用规范化后的文本，同样的字数能带上更多正文
+ */
+@Service
+public class ContentNormalizationService {
+
+    // 每页只看开头和结尾的若干行，页眉页脚都在这里，也限制了统计表的大小
+    private static final int EDGE_LINES = 3;
+
+    // 超过该长度的行不当作页眉页脚
+    private static final int MAX_BOILERPLATE_LINE_CHARS = 120;
+
+    // 至少有这么多页才做重复行识别
+    private static final int MIN_PAGES = 3;
+
+    private static final int READ_BATCH_SIZE = 50;
+
+    private static final Pattern WHITESPACE = Pattern.compile("[\\s\\u00A0\\u3000]+");
+    private static final Pattern DIGITS = Pattern.compile("\\d+");
+
+    // 页码、幻灯片编号之类只有编号的行，只在页首页尾匹配
+    private static final Pattern PAGE_MARKER = Pattern.compile(
+            "(?i)^(?:"
+                    + "(?:slide|page|p\\.?)\\s*\\d+(?:\\s*(?:of|/)\\s*\\d+)?\\s*[:：]?"
+                    + "|幻灯片\\s*\\d+\\s*[:：]?"
+                    + "|第\\s*\\d+\\s*[页张](?:\\s*[,，/]?\\s*共\\s*\\d+\\s*[页张])?"
+                    + "|[-–—]?\\s*\\d{1,4}\\s*[-–—]?"
+                    + "|\\d+\\s*/\\s*\\d+"
+                    + ")$");
+
+    private final ContentSegmentService contentSegmentService;
+    private final ContentSegmentRepository contentSegmentRepository;
+
+    // 一行出现在至少该比例的页上即视为页眉页脚
+    @Value("${content.normalize.repeat-ratio:0.5}")
+    private double repeatRatio;
+
+    public ContentNormalizationService(ContentSegmentService contentSegmentService,
+                                       ContentSegmentRepository contentSegmentRepository) {
+        this.contentSegmentService = contentSegmentService;
+        this.contentSegmentRepository = contentSegmentRepository;
+    }
+
+    /**
+     * 规范化一个内容的全部分段，只写回发生变化的 cleanText
+     */
+    public Result normalize(Long contentId) {
+        Set<String> boilerplate = detectBoilerplate(contentId);
+
+        Result result = new Result();
+        int from = 0;
+        while (true) {
+            List<ContentSegment> segments = contentSegmentService.getRange(contentId, from, READ_BATCH_SIZE);
+            for (ContentSegment segment : segments) {
+                String cleanText = clean(segment.getText(), boilerplate);
+                if (!cleanText.equals(segment.getCleanText())) {
+                    contentSegmentRepository.updateCleanText(segment.getId(), cleanText);
+                    result.changedSequences.add(segment.getSequenceNumber());
+                }
+                result.cleanTextLength += cleanText.length();
+            }
+            if (segments.size() < READ_BATCH_SIZE) {
+                break;
+            }
+            from = segments.get(segments.size() - 1).getSequenceNumber() + 1;
+        }
+        return result;
+    }
+
+    /**
+     * 统计每页开头和结尾的行（数字归一化后比较，带页码的页眉也能识别），
+     * 出现在足够多页上的即为页眉页脚；纯文本段落没有分页，不做识别
+     */
+    private Set<String> detectBoilerplate(Long contentId) {
+        Map<String, Integer> pageCounts = new HashMap<>();
+        Set<Integer> pages = new HashSet<>();
+        int from = 0;
+        while (true) {
+            List<ContentSegment> segments = contentSegmentService.getRange(contentId, from, READ_BATCH_SIZE);
+            for (ContentSegment segment : segments) {
+                if (segment.getKind() != ContentSegment.SegmentKind.PAGE
+                        && segment.getKind() != ContentSegment.SegmentKind.SLIDE) {
+                    continue;
+                }
+                // 超长页拆成的多个分段只统计第一段
+                if (!pages.add(segment.getSourceIndex())) {
+                    continue;
+                }
+                for (String key : edgeLineKeys(segment.getText())) {
+                    pageCounts.merge(key, 1, Integer::sum);
+                }
+            }
+            if (segments.size() < READ_BATCH_SIZE) {
+                break;
+            }
+            from = segments.get(segments.size() - 1).getSequenceNumber() + 1;
+        }
+
+        if (pages.size() < MIN_PAGES) {
+            return Collections.emptySet();
+        }
+        int threshold = Math.max(MIN_PAGES, (int) Math.ceil(pages.size() * repeatRatio));
+        Set<String> boilerplate = new HashSet<>();
+        for (Map.Entry<String, Integer> entry : pageCounts.entrySet()) {
+            if (entry.getValue() >= threshold) {
+                boilerplate.add(entry.getKey());
+            }
+        }
+        return boilerplate;
+    }
+
+    private Set<String> edgeLineKeys(String text) {
+        List<String> lines = new ArrayList<>();
+        for (String line : text.split("\\R")) {
+            String collapsed = collapse(line);
+            if (!collapsed.isEmpty()) {
+                lines.add(collapsed);
+            }
+        }
+        Set<String> keys = new HashSet<>();
+        for (int i = 0; i < lines.size(); i++) {
+            if (i < EDGE_LINES || i >= lines.size() - EDGE_LINES) {
+                String line = lines.get(i);
+                if (line.length() <= MAX_BOILERPLATE_LINE_CHARS) {
+                    keys.add(lineKey(line));
+                }
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * 逐行压缩空白，去掉页首页尾EDGE_LINES行内的编号行和页眉页脚（正文中只有数字的行保留），
+     * 连续空行合并为一个段落分隔
+     */
+    static String clean(String text, Set<String> boilerplate) {
+        List<String> lines = new ArrayList<>();
+        int nonEmpty = 0;
+        for (String line : text.split("\\R")) {
+            String collapsed = collapse(line);
+            lines.add(collapsed);
+            if (!collapsed.isEmpty()) {
+                nonEmpty++;
+            }
+        }
+        StringBuilder out = new StringBuilder(text.length());
+        boolean pendingBreak = false;
+        int index = -1;
+        for (String collapsed : lines) {
+            if (collapsed.isEmpty()) {
+                pendingBreak = out.length() > 0;
+                continue;
+            }
+            index++;
+            boolean edge = index < EDGE_LINES || index >= nonEmpty - EDGE_LINES;
+            if (edge && (PAGE_MARKER.matcher(collapsed).matches() || boilerplate.contains(lineKey(collapsed)))) {
+                continue;
+            }
+            if (out.length() > 0) {
+                out.append(pendingBreak ? "\n\n" : "\n");
+            }
+            out.append(collapsed);
+            pendingBreak = false;
+        }
+        return out.toString();
+    }
+
+    private static String collapse(String line) {
+        return WHITESPACE.matcher(line).replaceAll(" ").trim();
+    }
+
+    private static String lineKey(String collapsedLine) {
+        return DIGITS.matcher(collapsedLine).replaceAll("#").toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * 规范化结果：cleanText 发生变化的分段序号（需要重新索引）和规范化后的总字符数
+     */
+    public static class Result {
+        private final List<Integer> changedSequences = new ArrayList<>();
+        private long cleanTextLength;
+
+        public List<Integer> getChangedSequences() {
+            return changedSequences;
+        }
+
+        public long getCleanTextLength() {
+            return cleanTextLength;
+        }
+    }
+}
@@ -1,28 +1,42 @@
 package com.popquiz.service;
 
 import com.popquiz.model.Content;
+import com.popquiz.model.ContentSegment;
 import com.popquiz.model.Lecture;
 import com.popquiz.repository.ContentRepository;
-import org.apache.pdfbox.pdmodel.PDDocument;
-import org.apache.pdfbox.text.PDFTextStripper;
-import org.apache.poi.xslf.usermodel.XMLSlideShow;
-import org.apache.poi.xslf.usermodel.XSLFShape;
-import org.apache.poi.xslf.usermodel.XSLFSlide;
-import org.apache.poi.xslf.usermodel.XSLFTextShape;
+import com.popquiz.repository.QuestionRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.scheduling.annotation.Async;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.File;
-import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
 import java.nio.file.Files;
-import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
 
 /**
  * 内容处理服务
@@ -33,123 +47,730 @@ public class ContentProcessingService {
 
     private static final Logger logger = LoggerFactory.getLogger(ContentProcessingService.class);
     
+    // 每提取多少页推送一次进度
+    private static final int PROGRESS_PAGE_INTERVAL = 10;
+    
     private final ContentRepository contentRepository;
+    private final ContentStorageService contentStorageService;
+    private final LectureVersionService lectureVersionService;
+    private final ContentIngestionExecutor ingestionExecutor;
+    private final NotificationService notificationService;
+    private final PdfTextExtractor pdfTextExtractor;
+    private final PowerPointTextExtractor powerPointTextExtractor;
+    private final ContentSegmentService contentSegmentService;
+    private final ContentIndexService contentIndexService;
+    private final QuestionRepository questionRepository;
+    private final IngestionMetrics ingestionMetrics;
+    private final ContentNormalizationService contentNormalizationService;
+    private final SchedulerLockService schedulerLockService;
+    
+    // 提取失败后自动重试的次数
+    @Value("${content.ingestion.max-retries:2}")
+    private int maxRetries;
+    
+    // 未完成的内容超过该时间没有进展时视为处理节点已宕机，重新提交
+    @Value("${content.ingestion.stale-minutes:10}")
+    private long staleMinutes;
+    
+    // 压缩包批量上传：条目文件名编码、最多条目数、解压后总字节数上限
+    @Value("${content.archive.charset:UTF-8}")
+    private String archiveCharset;
+    
+    @Value("${content.archive.max-entries:200}")
+    private int archiveMaxEntries;
+    
+    @Value("${content.archive.max-bytes:2147483648}")
+    private long archiveMaxBytes;
+    
+    // 每个批次同时提交到处理队列的条目数，其余在批次内排队，不占满共享的处理队列
+    @Value("${content.archive.max-in-flight:4}")
+    private int archiveMaxInFlight;
     
-    @Value("${upload.path}")
-    private String uploadPath;
+    // 批量上传中尚未处理完的内容ID -> 所属批次
+    private final Map<Long, ArchiveBatch> batchByContent = new ConcurrentHashMap<>();
+    // 还有条目未提交到处理队列的批次
+    private final Set<ArchiveBatch> feedingBatches = ConcurrentHashMap.newKeySet();
     
-    public ContentProcessingService(ContentRepository contentRepository) {
+    public ContentProcessingService(ContentRepository contentRepository,
+                                    ContentStorageService contentStorageService,
+                                    LectureVersionService lectureVersionService,
+                                    ContentIngestionExecutor ingestionExecutor,
+                                    NotificationService notificationService,
+                                    PdfTextExtractor pdfTextExtractor,
+                                    PowerPointTextExtractor powerPointTextExtractor,
+                                    ContentSegmentService contentSegmentService,
+                                    ContentIndexService contentIndexService,
+                                    QuestionRepository questionRepository,
+                                    IngestionMetrics ingestionMetrics,
+                                    ContentNormalizationService contentNormalizationService,
+                                    SchedulerLockService schedulerLockService) {
         this.contentRepository = contentRepository;
+        this.contentStorageService = contentStorageService;
+        this.lectureVersionService = lectureVersionService;
+        this.ingestionExecutor = ingestionExecutor;
+        this.notificationService = notificationService;
+        this.pdfTextExtractor = pdfTextExtractor;
+        this.powerPointTextExtractor = powerPointTextExtractor;
+        this.contentSegmentService = contentSegmentService;
+        this.contentIndexService = contentIndexService;
+        this.questionRepository = questionRepository;
+        this.ingestionMetrics = ingestionMetrics;
+        this.contentNormalizationService = contentNormalizationService;
+        this.schedulerLockService = schedulerLockService;
     }
     
     /**
      * 处理上传的内容文件
      */
     public Content processContentUpload(MultipartFile file, Lecture lecture) throws Exception {
-        // 创建上传目录（如果不存在）
-        File uploadDir = new File(uploadPath);
-        if (!uploadDir.exists()) {
-            uploadDir.mkdirs();
-        }
+        Content.ContentType type = detectType(file.getContentType());
+        // 流式保存文件，同时得到SHA-256和实际大小
+        ContentStorageService.StoredFile storedFile = storeFile(file.getInputStream(), file.getSize(), type);
+        Content savedContent = createContent(storedFile, file.getOriginalFilename(), file.getContentType(), type, lecture);
+        lectureVersionService.bump(lecture.getId());
         
-        // 生成文件路径
-        String fileName = System.currentTimeMillis() + "_" + file.getOriginalFilename();
-        Path filePath = Paths.get(uploadPath, fileName);
+        publishStatus(savedContent);
         
-        // 保存文件
-        Files.write(filePath, file.getBytes());
+        if (savedContent.getProcessStatus() == Content.ProcessStatus.PENDING) {
+            // 交给内容处理线程池，请求线程立即返回
+            submitOrFail(savedContent, priorityOf(lecture), 0);
+        }
         
+        return savedContent;
+    }
+    
+    /**
+     * 批量上传ZIP压缩包：逐个条目流式读出并保存，不在内存或磁盘上整体解压；
+     * 每个条目成为一条内容记录，提取任务边读边提交给内容处理线程池并行执行，
+     * 整批进度通过讲座话题上的 CONTENT_BATCH_PROGRESS 推送。
+     * 超出条目数或总大小上限等原因中途停止时，已保存的条目照常处理，返回的批次带上错误信息
+     */
+    public ArchiveBatch processArchiveUpload(MultipartFile archive, Lecture lecture) throws Exception {
+        ArchiveBatch batch = new ArchiveBatch(UUID.randomUUID().toString(), lecture.getId(), priorityOf(lecture));
+        long totalBytes = 0;
+        try (ZipInputStream zip = new ZipInputStream(archive.getInputStream(), Charset.forName(archiveCharset))) {
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                String filename = entryFilename(entry);
+                if (filename == null) {
+                    continue;
+                }
+                String mimeType = MediaTypeFactory.getMediaType(filename)
+                        .map(MediaType::toString)
+                        .orElse(null);
+                Content.ContentType type = detectType(mimeType);
+                if (type == Content.ContentType.OTHER) {
+                    batch.skipped.add(filename);
+                    continue;
+                }
+                if (batch.contentIds.size() >= archiveMaxEntries) {
+                    throw new RuntimeException("压缩包中的文件数超过上限" + archiveMaxEntries);
+                }
+                
+                ArchiveEntryStream entryStream = new ArchiveEntryStream(zip, archiveMaxBytes - totalBytes);
+                ContentStorageService.StoredFile storedFile = storeFile(entryStream, entry.getSize(), type);
+                totalBytes += storedFile.getSize();
+                Content savedContent = createContent(storedFile, filename, mimeType, type, lecture);
+                batch.contentIds.add(savedContent.getId());
+                publishStatus(savedContent);
+                if (savedContent.getProcessStatus() == Content.ProcessStatus.PENDING) {
+                    // 条目先进入批次自己的队列，处理队列有空位时再逐个提交，已保存的条目不会因队列已满而失败
+                    batchByContent.put(savedContent.getId(), batch);
+                    synchronized (batch) {
+                        batch.backlog.addLast(savedContent.getId());
+                    }
+                    feedingBatches.add(batch);
+                    feedBatch(batch);
+                } else {
+                    batch.completed.incrementAndGet();
+                }
+            }
+        } catch (Exception e) {
+            if (batch.contentIds.isEmpty()) {
+                throw e;
+            }
+            logger.warn("压缩包读取中止，已保存{}个文件: {}", batch.contentIds.size(), e.getMessage());
+            batch.error = e.getMessage();
+        } finally {
+            // 中途出错时已保存的条目照常处理，整批总数以实际读出的为准
+            batch.total = batch.contentIds.size();
+            if (!batch.contentIds.isEmpty()) {
+                lectureVersionService.bump(lecture.getId());
+                publishBatchProgress(batch);
+            }
+        }
+        if (batch.contentIds.isEmpty()) {
+            throw new RuntimeException("压缩包中没有可处理的文件");
+        }
+        return batch;
+    }
+    
+    // 跳过目录、隐藏文件和 macOS 生成的元数据，返回条目的文件名部分
+    private String entryFilename(ZipEntry entry) {
+        if (entry.isDirectory() || entry.getName().startsWith("__MACOSX/")) {
+            return null;
+        }
+        String name = entry.getName().replace('\\', '/');
+        String filename = name.substring(name.lastIndexOf('/') + 1);
+        return filename.isEmpty() || filename.startsWith(".") ? null : filename;
+    }
+    
+    /**
+     * 保存文件并创建内容记录；相同文件已提取过时直接复用其分段，状态为已完成
+     */
+    private Content createContent(ContentStorageService.StoredFile storedFile, String filename, String mimeType,
+                                  Content.ContentType type, Lecture lecture) {
         // 创建内容记录
         Content content = new Content();
         content.setLecture(lecture);
-        content.setTitle(file.getOriginalFilename());
-        content.setFilePath(filePath.toString());
-        content.setOriginalFilename(file.getOriginalFilename());
-        content.setMimeType(file.getContentType());
-        content.setFileSize(file.getSize());
+        content.setTitle(filename);
+        content.setFilePath(storedFile.getPath().toString());
+        content.setOriginalFilename(filename);
+        content.setMimeType(mimeType);
+        content.setFileSize(storedFile.getSize());
+        content.setContentHash(storedFile.getSha256());
         content.setProcessStatus(Content.ProcessStatus.PENDING);
         
         // 根据文件类型设置内容类型
-        if (file.getContentType() != null) {
-            if (file.getContentType().contains("text/")) {
-                content.setType(Content.ContentType.TEXT);
-            } else if (file.getContentType().contains("application/vnd.ms-powerpoint") || 
-                    file.getContentType().contains("application/vnd.openxmlformats-officedocument.presentationml")) {
-                content.setType(Content.ContentType.POWERPOINT);
-            } else if (file.getContentType().contains("application/pdf")) {
-                content.setType(Content.ContentType.PDF);
-            } else if (file.getContentType().contains("audio/")) {
-                content.setType(Content.ContentType.AUDIO);
-            } else if (file.getContentType().contains("video/")) {
-                content.setType(Content.ContentType.VIDEO);
-            } else {
-                content.setType(Content.ContentType.OTHER);
+        content.setType(type);
+        
+        // 相同文件已经提取过文本时直接复用，不再重复解析
+        Content processed = storedFile.isDuplicate()
+                ? contentRepository.findFirstByContentHashAndTypeAndProcessStatusOrderByIdDesc(
+                        storedFile.getSha256(), content.getType(), Content.ProcessStatus.COMPLETED).orElse(null)
+                : null;
+        if (processed != null) {
+            LocalDateTime now = LocalDateTime.now();
+            content.setExtractedText(processed.getExtractedText());
+            content.setSegmentCount(processed.getSegmentCount());
+            content.setTextLength(processed.getTextLength());
+            content.setCleanTextLength(processed.getCleanTextLength());
+            content.setProcessStatus(Content.ProcessStatus.COMPLETED);
+            content.setProcessStartTime(now);
+            content.setProcessEndTime(now);
+        }
+        
+        // 保存内容记录
+        Content savedContent;
+        try {
+            savedContent = contentRepository.save(content);
+        } catch (RuntimeException e) {
+            contentStorageService.release(storedFile.getSha256());
+            throw e;
+        }
+        if (processed != null && processed.getSegmentCount() != null) {
+            contentSegmentService.copySegments(processed.getId(), savedContent.getId());
+            Content copied = savedContent;
+            try {
+                ingestionExecutor.submit(priorityOf(lecture), () -> contentIndexService.indexContent(copied));
+            } catch (RuntimeException e) {
+                logger.warn("复用内容的索引任务提交失败: contentId={}, {}", copied.getId(), e.getMessage());
             }
+        }
+        return savedContent;
+    }
+    
+    /**
+     * 上传内容的修订版本：保留原内容记录（题目与其来源分段的关联不变）。
+     * 已处理完成的内容先把新文件记为待处理修订，处理成功后才替换当前文件和分段，
+     * 按分段指纹只写入、重新索引变化的部分并标记受影响的题目；处理失败时保留当前版本。
+     * 未处理成功的内容直接替换文件后重新完整处理
+     */
+    public Content reviseContent(Long contentId, MultipartFile file) throws Exception {
+        Content content = contentRepository.findWithLectureById(contentId)
+                .orElseThrow(() -> new RuntimeException("内容未找到"));
+        if (content.getProcessStatus() == Content.ProcessStatus.PENDING
+                || content.getProcessStatus() == Content.ProcessStatus.PROCESSING) {
+            throw new RuntimeException("内容正在处理中，请稍后再上传新版本");
+        }
+        
+        Content.ContentType type = detectType(file.getContentType());
+        ContentStorageService.StoredFile storedFile = storeFile(file.getInputStream(), file.getSize(), type);
+        if (storedFile.getSha256().equals(content.getContentHash())) {
+            // 与当前版本完全相同，无需处理
+            contentStorageService.release(storedFile.getSha256());
+            return content;
+        }
+        
+        String previousHash = content.getContentHash();
+        boolean revision = content.getProcessStatus() == Content.ProcessStatus.COMPLETED;
+        if (revision) {
+            content.setRevisionFilePath(storedFile.getPath().toString());
+            content.setRevisionOriginalFilename(file.getOriginalFilename());
+            content.setRevisionMimeType(file.getContentType());
+            content.setRevisionFileSize(storedFile.getSize());
+            content.setRevisionContentHash(storedFile.getSha256());
+            content.setRevisionType(type);
         } else {
-            content.setType(Content.ContentType.OTHER);
+            content.setFilePath(storedFile.getPath().toString());
+            content.setOriginalFilename(file.getOriginalFilename());
+            content.setMimeType(file.getContentType());
+            content.setFileSize(storedFile.getSize());
+            content.setContentHash(storedFile.getSha256());
+            content.setType(type);
         }
+        content.setProcessStatus(Content.ProcessStatus.PENDING);
+        content.setErrorMessage(null);
         
-        // 保存内容记录
-        Content savedContent = contentRepository.save(content);
+        Content savedContent;
+        try {
+            savedContent = contentRepository.save(content);
+        } catch (RuntimeException e) {
+            contentStorageService.release(storedFile.getSha256());
+            throw e;
+        }
+        if (!revision) {
+            contentStorageService.release(previousHash);
+        }
+        lectureVersionService.bump(content.getLecture().getId());
+        publishStatus(savedContent);
+        
+        submitOrFail(savedContent, priorityOf(content.getLecture()), 0);
+        return savedContent;
+    }
+    
+    private ContentStorageService.StoredFile storeFile(InputStream input, long declaredSize,
+                                                       Content.ContentType type) throws Exception {
+        long start = System.nanoTime();
+        try {
+            ContentStorageService.StoredFile storedFile = contentStorageService.store(input);
+            ingestionMetrics.recordStore(type,
+                    storedFile.isDuplicate() ? IngestionMetrics.OUTCOME_DUPLICATE : IngestionMetrics.OUTCOME_SUCCESS,
+                    System.nanoTime() - start, storedFile.getSize());
+            return storedFile;
+        } catch (Exception e) {
+            ingestionMetrics.recordStore(type, IngestionMetrics.OUTCOME_FAILURE, System.nanoTime() - start,
+                    Math.max(declaredSize, 0));
+            throw e;
+        }
+    }
+    
+    private Content.ContentType detectType(String contentType) {
+        if (contentType == null) {
+            return Content.ContentType.OTHER;
+        }
+        if (contentType.contains("text/")) {
+            return Content.ContentType.TEXT;
+        } else if (contentType.contains("application/vnd.ms-powerpoint") ||
+                contentType.contains("application/vnd.openxmlformats-officedocument.presentationml")) {
+            return Content.ContentType.POWERPOINT;
+        } else if (contentType.contains("application/pdf")) {
+            return Content.ContentType.PDF;
+        } else if (contentType.contains("audio/")) {
+            return Content.ContentType.AUDIO;
+        } else if (contentType.contains("video/")) {
+            return Content.ContentType.VIDEO;
+        }
+        return Content.ContentType.OTHER;
+    }
+    
+    /**
+     * 删除内容，并释放其对上传文件的引用；处理中的内容不能删除，否则处理线程会把记录和分段重新写回
+     */
+    public void deleteContent(Content content) {
+        if (content.getProcessStatus() == Content.ProcessStatus.PENDING
+                || content.getProcessStatus() == Content.ProcessStatus.PROCESSING) {
+            throw new RuntimeException("内容正在处理中，请稍后再删除");
+        }
+        Long lectureId = content.getLecture().getId();
+        contentSegmentService.deleteSegments(content.getId());
+        contentRepository.delete(content);
+        contentIndexService.deleteContent(content.getId());
+        contentStorageService.release(content.getContentHash());
+        lectureVersionService.bump(lectureId);
+    }
+    
+    /**
+     * 手动重试处理失败的内容
+     */
+    public Content retryContent(Long contentId) {
+        Content content = contentRepository.findWithLectureById(contentId)
+                .orElseThrow(() -> new RuntimeException("内容未找到"));
+        if (content.getProcessStatus() != Content.ProcessStatus.FAILED) {
+            throw new RuntimeException("只有处理失败的内容可以重试");
+        }
         
-        // 异步处理内容
-        processContentAsync(savedContent.getId());
+        content.setProcessStatus(Content.ProcessStatus.PENDING);
+        content.setErrorMessage(null);
+        Content savedContent = contentRepository.save(content);
+        lectureVersionService.bump(content.getLecture().getId());
+        publishStatus(savedContent);
         
+        submitOrFail(savedContent, priorityOf(content.getLecture()), 0);
         return savedContent;
     }
     
     /**
-     * 异步处理内容
+     * 重新提交长时间没有进展的未完成内容（处理节点重启或宕机时队列中的任务会丢失）。
+     * 集群中只由持有锁的节点执行；处理中的内容先以条件更新退回待处理，
+     * 仍在其他节点队列中的待处理内容即使重复提交，也只有一个任务能认领并处理；
+     * 本节点仍在排队的内容不重复提交，处理队列已满时留到下次检查
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(initialDelayString = "${content.ingestion.recovery-ms:300000}",
+            fixedDelayString = "${content.ingestion.recovery-ms:300000}")
+    public void resubmitUnfinished() {
+        if (!schedulerLockService.tryAcquire("content-resubmit")) {
+            return;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime staleBefore = now.minusMinutes(staleMinutes);
+        List<Content> unfinished = contentRepository.findWithLectureByProcessStatusIn(
+                List.of(Content.ProcessStatus.PENDING, Content.ProcessStatus.PROCESSING));
+        int resubmitted = 0;
+        for (Content content : unfinished) {
+            if (content.getUpdatedAt() != null && content.getUpdatedAt().isAfter(staleBefore)) {
+                // 最近有进展，可能仍在其他节点的队列中或正在处理
+                continue;
+            }
+            if (ingestionExecutor.isQueued(content.getId()) || batchByContent.containsKey(content.getId())) {
+                // 仍在本节点的处理队列或批次中，只是排队时间长
+                continue;
+            }
+            if (content.getProcessStatus() == Content.ProcessStatus.PROCESSING) {
+                if (contentRepository.requeueStale(content.getId(), Content.ProcessStatus.PROCESSING,
+                        Content.ProcessStatus.PENDING, staleBefore, now) == 0) {
+                    continue;
+                }
+                content.setProcessStatus(Content.ProcessStatus.PENDING);
+            }
+            // 队列已满时保持待处理，下次检查再提交；不能标记失败，原任务可能仍在其他节点排队
+            if (trySubmit(content.getId(), priorityOf(content.getLecture()), 0)) {
+                resubmitted++;
+            }
+        }
+        if (resubmitted > 0) {
+            logger.info("已重新提交{}个未处理完的内容", resubmitted);
+        }
+    }
+    
+    /**
+     * 提交处理任务；队列已满等原因提交失败时把内容标记为失败（修订版本则丢弃修订）并推送状态，之后可手动重试
+     */
+    private boolean submitOrFail(Content content, int priority, int attempt) {
+        try {
+            submit(content.getId(), priority, attempt);
+            return true;
+        } catch (RuntimeException e) {
+            logger.warn("提交内容处理任务失败: contentId={}, {}", content.getId(), e.getMessage());
+            content.setProcessEndTime(LocalDateTime.now());
+            if (content.getRevisionContentHash() != null) {
+                discardRevision(content, e.getMessage());
+            } else {
+                content.setProcessStatus(Content.ProcessStatus.FAILED);
+                content.setErrorMessage(e.getMessage());
+                contentRepository.save(content);
+            }
+            lectureVersionService.bump(content.getLecture().getId());
+            publishStatus(content);
+            onBatchItemFinished(content.getId(), false);
+            return false;
+        }
+    }
+    
+    private void submit(Long contentId, int priority, int attempt) {
+        long enqueuedAt = System.nanoTime();
+        ingestionExecutor.submit(priority, contentId, () -> processContentAsync(contentId, attempt, enqueuedAt));
+    }
+    
+    private boolean trySubmit(Long contentId, int priority, int attempt) {
+        long enqueuedAt = System.nanoTime();
+        return ingestionExecutor.trySubmit(priority, contentId,
+                () -> processContentAsync(contentId, attempt, enqueuedAt));
+    }
+    
+    /**
+     * 把批次中排队的条目提交到处理队列，同时提交的条目数不超过上限；
+     * 处理队列已满时留在批次中，等本批次有条目处理完或定时补充时再提交
+     */
+    private void feedBatch(ArchiveBatch batch) {
+        while (true) {
+            Long contentId;
+            synchronized (batch) {
+                if (batch.backlog.isEmpty() || batch.inFlight >= Math.max(1, archiveMaxInFlight)) {
+                    return;
+                }
+                contentId = batch.backlog.pollFirst();
+                batch.inFlight++;
+            }
+            if (!trySubmit(contentId, batch.priority, 0)) {
+                synchronized (batch) {
+                    batch.backlog.addFirst(contentId);
+                    batch.inFlight--;
+                }
+                return;
+            }
+        }
+    }
+    
+    /**
+     * 处理队列一直被其他任务占满时，批次中的条目靠这里继续提交
      */
-    @Async
-    public void processContentAsync(Long contentId) {
+    @Scheduled(fixedDelayString = "${content.archive.feed-ms:5000}")
+    public void feedArchiveBatches() {
+        for (ArchiveBatch batch : feedingBatches) {
+            synchronized (batch) {
+                if (batch.backlog.isEmpty() && batch.total != null) {
+                    feedingBatches.remove(batch);
+                    continue;
+                }
+            }
+            feedBatch(batch);
+        }
+    }
+    
+    private int priorityOf(Lecture lecture) {
+        return lecture.getStatus() == Lecture.LectureStatus.LIVE
+                ? ContentIngestionExecutor.PRIORITY_LIVE
+                : ContentIngestionExecutor.PRIORITY_NORMAL;
+    }
+    
+    /**
+     * 在内容处理线程上提取文本
+     */
+    void processContentAsync(Long contentId, int attempt, long enqueuedAtNanos) {
+        IngestionMetrics.Run run = null;
         try {
+            // 同一内容可能被重复提交（如宕机恢复），只有认领成功的任务继续处理
+            if (contentRepository.claimForProcessing(contentId, Content.ProcessStatus.PENDING,
+                    Content.ProcessStatus.PROCESSING, LocalDateTime.now()) == 0) {
+                logger.debug("内容已被其他任务处理，跳过: contentId={}", contentId);
+                return;
+            }
             Content content = contentRepository.findById(contentId)
                     .orElseThrow(() -> new RuntimeException("内容未找到"));
+            run = ingestionMetrics.startRun(content, enqueuedAtNanos);
             
-            content.setProcessStatus(Content.ProcessStatus.PROCESSING);
-            content.setProcessStartTime(java.time.LocalDateTime.now());
-            contentRepository.save(content);
+            lectureVersionService.bump(content.getLecture().getId());
+            publishStatus(content);
             
-            String extractedText = "";
+            // 只有处理完成过的内容上传新版本时才增量处理，其余（首次上传及其重试）完整处理
+            boolean revision = content.getRevisionContentHash() != null;
+            String filePath = revision ? content.getRevisionFilePath() : content.getFilePath();
+            Content.ContentType type = revision ? content.getRevisionType() : content.getType();
             
+            ContentSegmentService.SegmentWriter writer = null;
+            ContentNormalizationService.Result normalized = null;
+            boolean succeeded = false;
+            long parseStart = System.nanoTime();
             try {
-                switch (content.getType()) {
+                // 提取出的文本按页/幻灯片/段落分段写入，不再整体保存在内容记录中
+                writer = revision
+                        ? contentSegmentService.openRevisionWriter(contentId)
+                        : contentSegmentService.openWriter(contentId);
+                switch (type) {
                     case TEXT:
-                        extractedText = processTextFile(content.getFilePath());
+                        writer.appendParagraphs(processTextFile(filePath));
                         break;
                     case POWERPOINT:
-                        extractedText = processPowerPointFile(content.getFilePath());
+                        processPowerPointFile(content, filePath, writer);
                         break;
                     case PDF:
-                        extractedText = processPdfFile(content.getFilePath());
+                        processPdfFile(content, filePath, writer);
                         break;
                     case AUDIO:
                         // 音频处理需要外部API或服务
-                        extractedText = "音频文件需要外部转录服务";
+                        writer.append(ContentSegment.SegmentKind.BLOCK, 1, "音频文件需要外部转录服务");
                         break;
                     case VIDEO:
                         // 视频处理需要外部API或服务
-                        extractedText = "视频文件需要外部转录服务";
+                        writer.append(ContentSegment.SegmentKind.BLOCK, 1, "视频文件需要外部转录服务");
                         break;
                     default:
-                        extractedText = "不支持的文件类型";
+                        writer.append(ContentSegment.SegmentKind.BLOCK, 1, "不支持的文件类型");
                 }
+                writer.finish();
+                recordExtraction(run, parseStart, writer);
+                if (revision) {
+                    // 新版本的分段全部写入后才切换，之前的失败不影响当前版本
+                    contentSegmentService.commitRevision(writer);
+                    promoteRevision(content);
+                    markDependentQuestionsStale(content, writer.getRemovedFingerprints());
+                }
+                
+                // 去掉页眉页脚、编号行等重复内容，原始文本和规范化文本分别保存
+                long normalizeStart = System.nanoTime();
+                normalized = contentNormalizationService.normalize(contentId);
+                run.stage(IngestionMetrics.STAGE_NORMALIZE, System.nanoTime() - normalizeStart);
                 
-                content.setExtractedText(extractedText);
+                content.setExtractedText(null);
+                content.setSegmentCount(writer.getSegmentCount());
+                content.setTextLength(writer.getTextLength());
+                content.setCleanTextLength(normalized.getCleanTextLength());
                 content.setProcessStatus(Content.ProcessStatus.COMPLETED);
+                succeeded = true;
             } catch (Exception e) {
+                if (normalized == null) {
+                    recordExtraction(run, parseStart, writer);
+                }
+                if (attempt < maxRetries) {
+                    // 放回队列末尾重试，不占用新上传内容的处理顺序
+                    logger.warn("处理内容失败，稍后重试: contentId={}, attempt={}", contentId, attempt + 1, e);
+                    content.setProcessStatus(Content.ProcessStatus.PENDING);
+                    content.setErrorMessage(e.getMessage());
+                    contentRepository.save(content);
+                    lectureVersionService.bump(content.getLecture().getId());
+                    publishStatus(content);
+                    run.finish(submitOrFail(content, ContentIngestionExecutor.PRIORITY_RETRY, attempt + 1)
+                            ? IngestionMetrics.OUTCOME_RETRY : IngestionMetrics.OUTCOME_FAILURE);
+                    return;
+                }
                 logger.error("处理内容时出错", e);
-                content.setProcessStatus(Content.ProcessStatus.FAILED);
-                content.setErrorMessage(e.getMessage());
+                if (content.getRevisionContentHash() != null) {
+                    contentSegmentService.deleteStaged(contentId);
+                    discardRevision(content, e.getMessage());
+                } else {
+                    // 修订版本切换后才失败时，索引中还有旧版本的文档
+                    contentSegmentService.deleteSegments(contentId);
+                    contentIndexService.deleteContent(contentId);
+                    content.setProcessStatus(Content.ProcessStatus.FAILED);
+                    content.setErrorMessage(e.getMessage());
+                }
             }
             
             content.setProcessEndTime(java.time.LocalDateTime.now());
+            long saveStart = System.nanoTime();
             contentRepository.save(content);
+            run.stage(IngestionMetrics.STAGE_PERSIST, System.nanoTime() - saveStart);
+            long postProcessStart = System.nanoTime();
+            if (succeeded) {
+                if (writer.isIncremental()) {
+                    // 只重新索引变化的分段；原文未变的分段也可能因页眉页脚识别结果变化而改变规范化文本
+                    Set<Integer> changed = new TreeSet<>(writer.getChangedSequences());
+                    changed.addAll(normalized.getChangedSequences());
+                    contentIndexService.updateSegments(content, new ArrayList<>(changed), writer.getSegmentCount());
+                } else {
+                    contentIndexService.indexContent(content);
+                }
+                run.stage(IngestionMetrics.STAGE_POST_PROCESS, System.nanoTime() - postProcessStart);
+            }
+            lectureVersionService.bump(content.getLecture().getId());
+            publishStatus(content);
+            onBatchItemFinished(contentId, succeeded);
+            run.finish(succeeded
+                    ? IngestionMetrics.OUTCOME_SUCCESS : IngestionMetrics.OUTCOME_FAILURE);
             
         } catch (Exception e) {
             logger.error("异步处理内容时出错", e);
+            onBatchItemFinished(contentId, false);
+            if (run != null) {
+                run.finish(IngestionMetrics.OUTCOME_FAILURE);
+            }
+        }
+    }
+    
+    /**
+     * 修订版本的分段切换后，用修订文件替换当前文件，并释放对旧文件的引用
+     */
+    private void promoteRevision(Content content) {
+        String previousHash = content.getContentHash();
+        content.setFilePath(content.getRevisionFilePath());
+        content.setOriginalFilename(content.getRevisionOriginalFilename());
+        content.setMimeType(content.getRevisionMimeType());
+        content.setFileSize(content.getRevisionFileSize());
+        content.setContentHash(content.getRevisionContentHash());
+        content.setType(content.getRevisionType());
+        clearRevision(content);
+        contentRepository.save(content);
+        contentStorageService.release(previousHash);
+    }
+    
+    /**
+     * 修订版本处理失败：恢复为已完成状态继续使用当前版本，并释放对修订文件的引用
+     */
+    private void discardRevision(Content content, String errorMessage) {
+        String revisionHash = content.getRevisionContentHash();
+        clearRevision(content);
+        content.setProcessStatus(Content.ProcessStatus.COMPLETED);
+        content.setErrorMessage("新版本处理失败: " + errorMessage);
+        contentRepository.save(content);
+        contentStorageService.release(revisionHash);
+    }
+    
+    private void clearRevision(Content content) {
+        content.setRevisionFilePath(null);
+        content.setRevisionOriginalFilename(null);
+        content.setRevisionMimeType(null);
+        content.setRevisionFileSize(null);
+        content.setRevisionContentHash(null);
+        content.setRevisionType(null);
+    }
+    
+    private void onBatchItemFinished(Long contentId, boolean completed) {
+        ArchiveBatch batch = batchByContent.remove(contentId);
+        if (batch == null) {
+            return;
+        }
+        synchronized (batch) {
+            batch.inFlight--;
+        }
+        if (completed) {
+            batch.completed.incrementAndGet();
+        } else {
+            batch.failed.incrementAndGet();
         }
+        publishBatchProgress(batch);
+        feedBatch(batch);
+    }
+    
+    /**
+     * 推送批量上传的整体进度，total为null表示压缩包仍在读取中
+     */
+    private void publishBatchProgress(ArchiveBatch batch) {
+        Map<String, Object> data = new HashMap<>();
+        data.put("batchId", batch.batchId);
+        data.put("total", batch.total);
+        data.put("completed", batch.completed.get());
+        data.put("failed", batch.failed.get());
+        data.put("done", batch.isDone());
+        notificationService.broadcastLectureNotification(batch.lectureId, "CONTENT_BATCH_PROGRESS", data);
+    }
+    
+    /**
+     * 提取阶段的耗时拆分为解析和分段写库两部分
+     */
+    private void recordExtraction(IngestionMetrics.Run run, long parseStart,
+                                  ContentSegmentService.SegmentWriter writer) {
+        long persistNanos = writer != null ? writer.getPersistNanos() : 0;
+        run.stage(IngestionMetrics.STAGE_PARSE, System.nanoTime() - parseStart - persistNanos);
+        run.stage(IngestionMetrics.STAGE_PERSIST, persistNanos);
+    }
+    
+    private void markDependentQuestionsStale(Content content, Set<String> removedFingerprints) {
+        if (removedFingerprints.isEmpty()) {
+            return;
+        }
+        int stale = questionRepository.markStaleBySources(content.getId(), removedFingerprints);
+        if (stale > 0) {
+            logger.info("内容修订后有{}道题目需要复核: contentId={}", stale, content.getId());
+            Map<String, Object> data = new HashMap<>();
+            data.put("contentId", content.getId());
+            data.put("staleQuestionCount", stale);
+            notificationService.broadcastLectureNotification(content.getLecture().getId(), "QUESTIONS_STALE", data);
+        }
+    }
+    
+    // total为null表示总数未知（如演示文稿按顺序流式读取）
+    private void publishProgress(Content content, int processed, Integer total) {
+        // 顺带刷新更新时间，长时间处理的大文件不会被误判为无人处理
+        contentRepository.touch(content.getId(), LocalDateTime.now());
+        Map<String, Object> data = new HashMap<>();
+        data.put("contentId", content.getId());
+        data.put("processed", processed);
+        data.put("total", total);
+        notificationService.broadcastLectureNotification(content.getLecture().getId(), "CONTENT_PROGRESS", data);
+    }
+    
+    /**
+     * 在讲座话题上推送内容处理状态，前端无需轮询内容列表
+     */
+    private void publishStatus(Content content) {
+        Map<String, Object> data = new HashMap<>();
+        data.put("contentId", content.getId());
+        data.put("title", content.getTitle());
+        data.put("processStatus", content.getProcessStatus());
+        data.put("errorMessage", content.getErrorMessage());
+        notificationService.broadcastLectureNotification(content.getLecture().getId(), "CONTENT_STATUS", data);
     }
     
     /**
@@ -160,45 +781,117 @@ public class ContentProcessingService {
     }
     
     /**
-     * 处理PowerPoint文件
+     * 处理PowerPoint文件，按幻灯片推送提取进度
      */
-    private String processPowerPointFile(String filePath) throws Exception {
-        StringBuilder text = new StringBuilder();
-        
-        try (FileInputStream fis = new FileInputStream(filePath);
-             XMLSlideShow ppt = new XMLSlideShow(fis)) {
-            
-            for (XSLFSlide slide : ppt.getSlides()) {
-                text.append("Slide ").append(slide.getSlideNumber()).append(":\n");
-                
-                List<XSLFShape> shapes = slide.getShapes();
-                for (XSLFShape shape : shapes) {
-                    if (shape instanceof XSLFTextShape) {
-                        XSLFTextShape textShape = (XSLFTextShape) shape;
-                        String slideText = textShape.getText();
-                        if (slideText != null && !slideText.isEmpty()) {
-                            text.append(slideText).append("\n");
-                        }
-                    }
-                }
-                text.append("\n");
+    private void processPowerPointFile(Content content, String filePath,
+                                       ContentSegmentService.SegmentWriter writer) throws Exception {
+        powerPointTextExtractor.extract(new File(filePath), (slideNumber, slideText) -> {
+            writer.append(ContentSegment.SegmentKind.SLIDE, slideNumber, slideText);
+            if (slideNumber % PROGRESS_PAGE_INTERVAL == 0) {
+                publishProgress(content, slideNumber, null);
             }
+        });
+    }
+    
+    /**
+     * 处理PDF文件，按页推送提取进度
+     */
+    private void processPdfFile(Content content, String filePath,
+                                ContentSegmentService.SegmentWriter writer) throws Exception {
+        pdfTextExtractor.extract(new File(filePath), (pageNumber, pageCount, pageText) -> {
+            writer.append(ContentSegment.SegmentKind.PAGE, pageNumber, pageText);
+            if (pageNumber % PROGRESS_PAGE_INTERVAL == 0 || pageNumber == pageCount) {
+                publishProgress(content, pageNumber, pageCount);
+            }
+        });
+    }
+    
+    /**
+     * 一次压缩包上传的批次：已创建的内容、被跳过的条目和处理进度
+     */
+    public static class ArchiveBatch {
+        private final String batchId;
+        private final Long lectureId;
+        private final List<Long> contentIds = new ArrayList<>();
+        private final List<String> skipped = new ArrayList<>();
+        private final AtomicInteger completed = new AtomicInteger();
+        private final AtomicInteger failed = new AtomicInteger();
+        private volatile Integer total;
+        // 读取中途停止的原因，为null表示整个压缩包都已读完
+        private String error;
+        private final int priority;
+        // 尚未提交到处理队列的条目，以及已提交、未处理完的条目数；均由批次对象的锁保护
+        private final Deque<Long> backlog = new ArrayDeque<>();
+        private int inFlight;
+
+        ArchiveBatch(String batchId, Long lectureId, int priority) {
+            this.batchId = batchId;
+            this.lectureId = lectureId;
+            this.priority = priority;
+        }
+
+        public String getBatchId() {
+            return batchId;
+        }
+
+        public List<Long> getContentIds() {
+            return contentIds;
+        }
+
+        public List<String> getSkipped() {
+            return skipped;
+        }
+
+        public String getError() {
+            return error;
+        }
+
+        boolean isDone() {
+            Integer expected = total;
+            return expected != null && completed.get() + failed.get() >= expected;
         }
-        
-        return text.toString();
     }
     
     /**
-     * 处理PDF文件
+     * 压缩包条目的输入流：保存完成时不关闭底层的 ZipInputStream，
+     * 并限制解压出的字节数，防止压缩炸弹写满磁盘
      */
-    private String processPdfFile(String filePath) throws Exception {
-        StringBuilder text = new StringBuilder();
-        
-        try (PDDocument document = PDDocument.load(new File(filePath))) {
-            PDFTextStripper stripper = new PDFTextStripper();
-            text.append(stripper.getText(document));
+    private static class ArchiveEntryStream extends FilterInputStream {
+        private long remaining;
+
+        ArchiveEntryStream(InputStream in, long limit) {
+            super(in);
+            this.remaining = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                consume(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int n = super.read(buffer, offset, length);
+            if (n > 0) {
+                consume(n);
+            }
+            return n;
+        }
+
+        private void consume(long n) throws IOException {
+            remaining -= n;
+            if (remaining < 0) {
+                throw new IOException("压缩包解压后的大小超过上限");
+            }
+        }
+
+        @Override
+        public void close() {
+            // 由外层关闭 ZipInputStream
         }
-        
-        return text.toString();
     }
-} 
\ No newline at end of file
+}
@@ -0,0 +1,482 @@
+package com.popquiz.service;
+
+import com.popquiz.model.Content;
+import com.popquiz.model.ContentSegment;
+import com.popquiz.model.QuestionSource;
+import com.popquiz.repository.ContentRepository;
+import com.popquiz.repository.ContentSegmentRepository;
+import com.popquiz.repository.QuestionRepository;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 内容分段服务
+ * 负责分段写入、按范围读取，以及把全文切成符合token预算的出题文本块
+ */
+@Service
+public class ContentSegmentService {
+
+    // 单个分段的最大字符数，超长的页/幻灯片会拆成多段
+    static final int MAX_SEGMENT_CHARS = 16000;
+
+    // 纯文本按段落合并，每个分段约为该长度
+    static final int TARGET_PARAGRAPH_CHARS = 2000;
+
+    private static final Pattern PARAGRAPH_BREAK = Pattern.compile("\\n\\s*\\n");
+
+    // 批量写入的分段数
+    private static final int BATCH_SIZE = 50;
+
+    // 切分出题文本时每次读取的分段数
+    private static final int READ_BATCH_SIZE = 50;
+
+    private final ContentSegmentRepository contentSegmentRepository;
+    private final ContentRepository contentRepository;
+    private final QuestionRepository questionRepository;
+
+    public ContentSegmentService(ContentSegmentRepository contentSegmentRepository,
+                                 ContentRepository contentRepository,
+                                 QuestionRepository questionRepository) {
+        this.contentSegmentRepository = contentSegmentRepository;
+        this.contentRepository = contentRepository;
+        this.questionRepository = questionRepository;
+    }
+
+    /**
+     * 为首次处理（或处理失败后重试）的内容打开分段写入器，先清除上次处理留下的分段
+     */
+    public SegmentWriter openWriter(Long contentId) {
+        contentSegmentRepository.deleteByContentId(contentId);
+        return new SegmentWriter(contentRepository.getReferenceById(contentId), null);
+    }
+
+    /**
+     * 为修订版本打开分段写入器：新分段按指纹与当前分段比对，相同的只记下新位置，
+     * 新增或变化的以负序号暂存；在commitRevision之前，当前版本的分段保持不变
+     */
+    public SegmentWriter openRevisionWriter(Long contentId) {
+        contentSegmentRepository.deleteStaged(contentId);
+        Map<String, Deque<ContentSegmentRepository.SegmentFingerprint>> existing = new HashMap<>();
+        for (ContentSegmentRepository.SegmentFingerprint segment : contentSegmentRepository.findFingerprints(contentId)) {
+            existing.computeIfAbsent(segment.getFingerprint(), key -> new ArrayDeque<>()).add(segment);
+        }
+        return new SegmentWriter(contentRepository.getReferenceById(contentId), existing);
+    }
+
+    /**
+     * 在一个事务内切换到修订版本：删除新版本中已不存在的分段，移动位置变化的分段（及引用它们的题目来源），
+     * 再把暂存分段换成正式序号
+     */
+    @Transactional
+    public void commitRevision(SegmentWriter writer) {
+        Long contentId = writer.content.getId();
+        List<Long> removed = new ArrayList<>();
+        for (Deque<ContentSegmentRepository.SegmentFingerprint> unmatched : writer.existing.values()) {
+            for (ContentSegmentRepository.SegmentFingerprint segment : unmatched) {
+                removed.add(segment.getId());
+            }
+        }
+        if (!removed.isEmpty()) {
+            contentSegmentRepository.deleteAllByIdInBatch(removed);
+        }
+        boolean sourcesMoved = false;
+        for (Move move : writer.moves) {
+            contentSegmentRepository.updatePosition(move.id, move.sequence, move.sourceIndex, move.offset);
+            if (move.sequence != move.previousSequence) {
+                questionRepository.moveSource(contentId, move.previousSequence, move.sequence, move.fingerprint);
+                sourcesMoved = true;
+            }
+        }
+        if (sourcesMoved) {
+            questionRepository.settleMovedSources(contentId);
+        }
+        contentSegmentRepository.promoteStaged(contentId);
+    }
+
+    @Transactional
+    public void deleteStaged(Long contentId) {
+        contentSegmentRepository.deleteStaged(contentId);
+    }
+
+    @Transactional
+    public void deleteSegments(Long contentId) {
+        contentSegmentRepository.deleteByContentId(contentId);
+    }
+
+    @Transactional
+    public int copySegments(Long fromContentId, Long toContentId) {
+        return contentSegmentRepository.copySegments(fromContentId, toContentId);
+    }
+
+    /**
+     * 读取从from开始的count个分段
+     */
+    @Transactional(readOnly = true)
+    public List<ContentSegment> getRange(Long contentId, int from, int count) {
+        return contentSegmentRepository.findRange(contentId, Math.max(0, from), PageRequest.of(0, count));
+    }
+
+    /**
+     * 按内容顺序读取全部规范化文本，切成估算token数不超过tokenBudget的若干块，并记录每块用到的分段；
+     * 尽量在分段边界处切开，超出预算的分段按行拆开；没有分段的旧数据使用extractedText
+     */
+    @Transactional(readOnly = true)
+    public List<SourceText> loadChunks(List<Content> contents, int tokenBudget) {
+        ChunkBuilder chunks = new ChunkBuilder(tokenBudget);
+        for (Content content : contents) {
+            if (content.getSegmentCount() == null) {
+                if (content.getExtractedText() != null) {
+                    chunks.add(ContentNormalizationService.clean(content.getExtractedText(), Collections.emptySet()), null);
+                }
+                continue;
+            }
+            int from = 0;
+            while (true) {
+                List<ContentSegment> segments = getRange(content.getId(), from, READ_BATCH_SIZE);
+                for (ContentSegment segment : segments) {
+                    chunks.add(promptText(segment), toSource(segment));
+                }
+                if (segments.size() < READ_BATCH_SIZE) {
+                    break;
+                }
+                from = segments.get(segments.size() - 1).getSequenceNumber() + 1;
+            }
+        }
+        return chunks.finish();
+    }
+
+    /**
+     * 粗略估算文本的token数：中日韩等全角字符每字约一个token，其余字符约四个一个token
+     */
+    static int estimateTokens(CharSequence text) {
+        int wide = 0;
+        int narrow = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) >= 0x2E80) {
+                wide++;
+            } else {
+                narrow++;
+            }
+        }
+        return wide + (narrow + 3) / 4;
+    }
+
+    /**
+     * 出题和检索使用的文本：规范化后的文本，尚未规范化的旧分段使用原始文本
+     */
+    public static String promptText(ContentSegment segment) {
+        return segment.getCleanText() != null ? segment.getCleanText() : segment.getText();
+    }
+
+    public static QuestionSource toSource(ContentSegment segment) {
+        return new QuestionSource(segment.getContent().getId(), segment.getSequenceNumber(), segment.getFingerprint());
+    }
+
+    static String fingerprint(String text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(text.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("不支持SHA-256算法", e);
+        }
+    }
+
+    /**
+     * 出题用的文本及其来源分段
+     */
+    public static class SourceText {
+        private final String text;
+        private final List<QuestionSource> sources;
+
+        public SourceText(String text, List<QuestionSource> sources) {
+            this.text = text;
+            this.sources = sources;
+        }
+
+        public String getText() {
+            return text;
+        }
+
+        public List<QuestionSource> getSources() {
+            return sources;
+        }
+    }
+
+    /**
+     * 出题文本块的拼接器：依次追加分段文本，加入后超出预算时先结束当前块
+     */
+    private static class ChunkBuilder {
+        private final int tokenBudget;
+        private final List<SourceText> chunks = new ArrayList<>();
+        private final StringBuilder text = new StringBuilder();
+        private final List<QuestionSource> sources = new ArrayList<>();
+        private int tokens;
+
+        ChunkBuilder(int tokenBudget) {
+            this.tokenBudget = Math.max(1, tokenBudget);
+        }
+
+        void add(String segmentText, QuestionSource source) {
+            if (segmentText == null || segmentText.isBlank()) {
+                return;
+            }
+            for (String piece : split(segmentText)) {
+                int pieceTokens = estimateTokens(piece);
+                if (text.length() > 0 && tokens + pieceTokens > tokenBudget) {
+                    flush();
+                }
+                // 规范化后的文本去掉了页末换行，分段之间补一个换行
+                if (text.length() > 0) {
+                    text.append('\n');
+                }
+                text.append(piece);
+                tokens += pieceTokens;
+                if (source != null && !sources.contains(source)) {
+                    sources.add(source);
+                }
+            }
+        }
+
+        List<SourceText> finish() {
+            flush();
+            return chunks;
+        }
+
+        private void flush() {
+            if (!text.toString().isBlank()) {
+                chunks.add(new SourceText(text.toString(), new ArrayList<>(sources)));
+            }
+            text.setLength(0);
+            sources.clear();
+            tokens = 0;
+        }
+
+        /**
+         * 超出预算的文本按行拆成不超过预算的几部分，单行仍超出时按字符数截断
+         */
+        private List<String> split(String segmentText) {
+            if (estimateTokens(segmentText) <= tokenBudget) {
+                return List.of(segmentText);
+            }
+            List<String> pieces = new ArrayList<>();
+            StringBuilder piece = new StringBuilder();
+            int pieceTokens = 0;
+            for (String line : segmentText.split("\\R")) {
+                int lineTokens = estimateTokens(line) + 1;
+                if (piece.length() > 0 && pieceTokens + lineTokens > tokenBudget) {
+                    pieces.add(piece.toString());
+                    piece.setLength(0);
+                    pieceTokens = 0;
+                }
+                if (lineTokens > tokenBudget) {
+                    int chars = Math.max(1, (int) ((long) line.length() * tokenBudget / lineTokens));
+                    for (int start = 0; start < line.length(); start += chars) {
+                        pieces.add(line.substring(start, Math.min(line.length(), start + chars)));
+                    }
+                    continue;
+                }
+                if (piece.length() > 0) {
+                    piece.append('\n');
+                }
+                piece.append(line);
+                pieceTokens += lineTokens;
+            }
+            if (piece.length() > 0) {
+                pieces.add(piece.toString());
+            }
+            return pieces;
+        }
+    }
+
+    /**
+     * 分段写入器：按顺序追加页/幻灯片文本，攒够一批后写入数据库，
+     * 提取过程中已完成的部分即可落库；修订版本中与当前分段指纹相同的不再写入文本
+     */
+    public class SegmentWriter {
+        private final Content content;
+        // 修订版本尚未匹配的当前分段，按指纹分组、按序号排列；首次处理时为null
+        private final Map<String, Deque<ContentSegmentRepository.SegmentFingerprint>> existing;
+        private final Set<String> fingerprints = new HashSet<>();
+        private final Set<String> previousFingerprints = new HashSet<>();
+        private final List<Integer> changedSequences = new ArrayList<>();
+        private final List<Move> moves = new ArrayList<>();
+        private final List<ContentSegment> pending = new ArrayList<>();
+        private int sequence;
+        private long offset;
+        // 写数据库累计耗时，用于把持久化时间从解析时间中分离出来
+        private long persistNanos;
+
+        private SegmentWriter(Content content,
+                              Map<String, Deque<ContentSegmentRepository.SegmentFingerprint>> existing) {
+            this.content = content;
+            this.existing = existing;
+            if (existing != null) {
+                for (String previous : existing.keySet()) {
+                    if (previous != null) {
+                        previousFingerprints.add(previous);
+                    }
+                }
+            }
+        }
+
+        public void append(ContentSegment.SegmentKind kind, int sourceIndex, String text) {
+            if (text == null || text.isEmpty()) {
+                return;
+            }
+            for (int start = 0; start < text.length(); start += MAX_SEGMENT_CHARS) {
+                String part = text.substring(start, Math.min(text.length(), start + MAX_SEGMENT_CHARS));
+                String partFingerprint = fingerprint(part);
+                fingerprints.add(partFingerprint);
+                write(kind, sourceIndex, part, partFingerprint);
+                sequence++;
+                offset += part.length();
+            }
+            if (pending.size() >= BATCH_SIZE) {
+                flushPending();
+            }
+        }
+
+        private void write(ContentSegment.SegmentKind kind, int sourceIndex, String part, String partFingerprint) {
+            if (existing != null) {
+                // 重复出现的相同文本按出现顺序一一对应
+                Deque<ContentSegmentRepository.SegmentFingerprint> candidates = existing.get(partFingerprint);
+                ContentSegmentRepository.SegmentFingerprint old = candidates != null ? candidates.pollFirst() : null;
+                if (old != null) {
+                    if (old.getSequenceNumber() != sequence || old.getSourceIndex() != sourceIndex
+                            || old.getCharOffset() != offset) {
+                        moves.add(new Move(old.getId(), old.getSequenceNumber(), sequence, sourceIndex, offset,
+                                partFingerprint));
+                    }
+                    if (old.getSequenceNumber() != sequence) {
+                        changedSequences.add(sequence);
+                    }
+                    return;
+                }
+            }
+            ContentSegment segment = new ContentSegment();
+            segment.setContent(content);
+            segment.setSequenceNumber(existing != null ? -sequence - 1 : sequence);
+            segment.setKind(kind);
+            segment.setSourceIndex(sourceIndex);
+            segment.setCharOffset(offset);
+            segment.setCharLength(part.length());
+            segment.setText(part);
+            segment.setFingerprint(partFingerprint);
+            pending.add(segment);
+            changedSequences.add(sequence);
+        }
+
+        /**
+         * 纯文本按空行切分段落，相邻段落合并到约TARGET_PARAGRAPH_CHARS字符
+         */
+        public void appendParagraphs(String text) {
+            StringBuilder block = new StringBuilder();
+            int paragraphIndex = 0;
+            int blockStartIndex = 1;
+            int start = 0;
+            Matcher matcher = PARAGRAPH_BREAK.matcher(text);
+            while (start < text.length()) {
+                int end = matcher.find() ? matcher.end() : text.length();
+                String paragraph = text.substring(start, end);
+                start = end;
+                paragraphIndex++;
+                if (block.length() > 0 && block.length() + paragraph.length() > TARGET_PARAGRAPH_CHARS) {
+                    append(ContentSegment.SegmentKind.PARAGRAPH, blockStartIndex, block.toString());
+                    block.setLength(0);
+                    blockStartIndex = paragraphIndex;
+                }
+                block.append(paragraph);
+            }
+            append(ContentSegment.SegmentKind.PARAGRAPH, blockStartIndex, block.toString());
+        }
+
+        /**
+         * 写入剩余分段
+         */
+        public void finish() {
+            flushPending();
+        }
+
+        private void flushPending() {
+            if (!pending.isEmpty()) {
+                long start = System.nanoTime();
+                contentSegmentRepository.saveAll(pending);
+                persistNanos += System.nanoTime() - start;
+                pending.clear();
+            }
+        }
+
+        public long getPersistNanos() {
+            return persistNanos;
+        }
+
+        public int getSegmentCount() {
+            return sequence;
+        }
+
+        public long getTextLength() {
+            return offset;
+        }
+
+        /**
+         * 新增、文本变化或序号变化的分段序号（索引文档按序号区分）
+         */
+        public List<Integer> getChangedSequences() {
+            return changedSequences;
+        }
+
+        /**
+         * 当前版本中存在、修订版本中已不存在的分段指纹
+         */
+        public Set<String> getRemovedFingerprints() {
+            Set<String> removed = new HashSet<>(previousFingerprints);
+            removed.removeAll(fingerprints);
+            return removed;
+        }
+
+        /**
+         * 是否为修订版本的写入器
+         */
+        public boolean isIncremental() {
+            return existing != null;
+        }
+    }
+
+    /**
+     * 修订版本中文本未变、位置变化的分段
+     */
+    private static class Move {
+        private final Long id;
+        private final int previousSequence;
+        private final int sequence;
+        private final int sourceIndex;
+        private final long offset;
+        private final String fingerprint;
+
+        Move(Long id, int previousSequence, int sequence, int sourceIndex, long offset, String fingerprint) {
+            this.id = id;
+            this.previousSequence = previousSequence;
+            this.sequence = sequence;
+            this.sourceIndex = sourceIndex;
+            this.offset = offset;
+            this.fingerprint = fingerprint;
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package com.popquiz.service;
+
+import com.popquiz.repository.ContentBlobRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+
+/**
+ * 上传文件存储服务
+ * 上传内容通过NIO通道流式写入磁盘，写入的同时计算SHA-256和文件大小，
+ * 堆内存占用与文件大小无关；文件按SHA-256存放，相同内容只保存一份并记录引用数
+ */
+@Service
+public class ContentStorageService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ContentStorageService.class);
+
+    // 每次transferFrom的最大字节数
+    private static final long TRANSFER_CHUNK = 8L * 1024 * 1024;
+
+    // 同一哈希的登记与释放在本节点内串行执行，避免释放时删掉刚被重新引用的文件
+    private static final int LOCK_STRIPES = 64;
+
+    private final ContentBlobRepository contentBlobRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final Object[] locks = new Object[LOCK_STRIPES];
+
+    @Value("${upload.path}")
+    private String uploadPath;
+
+    public ContentStorageService(ContentBlobRepository contentBlobRepository,
+                                 PlatformTransactionManager transactionManager) {
+        this.contentBlobRepository = contentBlobRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    /**
+     * 流式保存上传文件并增加引用；内容已存在时丢弃本次写入，直接复用已有文件
+     */
+    public StoredFile store(MultipartFile file) throws IOException {
+        return store(file.getInputStream());
+    }
+
+    /**
+     * 流式保存输入流中的内容（如压缩包中的条目），保存完成后关闭输入流
+     */
+    public StoredFile store(InputStream input) throws IOException {
+        Path dir = Paths.get(uploadPath);
+        Files.createDirectories(dir);
+        Path tempFile = Files.createTempFile(dir, "upload-", ".part");
+
+        MessageDigest digest = newDigest();
+        long size = 0;
+        try (InputStream in = new DigestInputStream(input, digest);
+             ReadableByteChannel source = Channels.newChannel(in);
+             FileChannel target = FileChannel.open(tempFile, StandardOpenOption.WRITE)) {
+            long transferred;
+            while ((transferred = target.transferFrom(source, size, TRANSFER_CHUNK)) > 0) {
+                size += transferred;
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(tempFile);
+            throw e;
+        }
+
+        String hash = HexFormat.of().formatHex(digest.digest());
+        Path blobPath = blobPath(hash);
+        try {
+            synchronized (lockFor(hash)) {
+                if (acquire(hash)) {
+                    if (Files.exists(blobPath)) {
+                        return new StoredFile(blobPath, hash, size, true);
+                    }
+                    // 记录存在但文件丢失，用本次上传补回；引用已在上面增加，不再登记记录
+                    logger.warn("上传文件缺失，使用新上传的内容补回: hash={}", hash);
+                    Files.createDirectories(blobPath.getParent());
+                    Files.move(tempFile, blobPath, StandardCopyOption.REPLACE_EXISTING);
+                    return new StoredFile(blobPath, hash, size, false);
+                }
+                Files.createDirectories(blobPath.getParent());
+                Files.move(tempFile, blobPath, StandardCopyOption.REPLACE_EXISTING);
+                registerIfAbsent(hash, blobPath, size);
+                return new StoredFile(blobPath, hash, size, false);
+            }
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    /**
+     * 释放一次引用，引用数归零时删除文件
+     */
+    public void release(String hash) {
+        if (hash == null) {
+            return;
+        }
+        synchronized (lockFor(hash)) {
+            Integer deleted = transactionTemplate.execute(status -> {
+                contentBlobRepository.decrementRef(hash);
+                return contentBlobRepository.deleteIfUnreferenced(hash);
+            });
+            if (deleted != null && deleted > 0) {
+                try {
+                    Files.deleteIfExists(blobPath(hash));
+                } catch (IOException e) {
+                    logger.warn("删除上传文件失败: hash={}, {}", hash, e.getMessage());
+                }
+            }
+        }
+    }
+
+    private boolean acquire(String hash) {
+        Integer updated = transactionTemplate.execute(status -> contentBlobRepository.incrementRef(hash));
+        return updated != null && updated > 0;
+    }
+
+    private void registerIfAbsent(String hash, Path blobPath, long size) {
+        try {
+            transactionTemplate.execute(status ->
+                    contentBlobRepository.insertBlob(hash, blobPath.toString(), size, LocalDateTime.now()));
+        } catch (DataIntegrityViolationException e) {
+            // 其他节点同时登记了相同内容，改为增加引用
+            acquire(hash);
+        }
+    }
+
+    // 按哈希前两位分目录，避免单个目录下文件过多
+    private Path blobPath(String hash) {
+        return Paths.get(uploadPath, "objects", hash.substring(0, 2), hash);
+    }
+
+    private Object lockFor(String hash) {
+        return locks[Math.floorMod(hash.hashCode(), LOCK_STRIPES)];
+    }
+
+    private MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("不支持SHA-256算法", e);
+        }
+    }
+
+    /**
+     * 已保存的文件：路径、SHA-256（十六进制）、实际写入的字节数，以及是否复用了已有文件
+     */
+    public static class StoredFile {
+        private final Path path;
+        private final String sha256;
+        private final long size;
+        private final boolean duplicate;
+
+        StoredFile(Path path, String sha256, long size, boolean duplicate) {
+            this.path = path;
+            this.sha256 = sha256;
+            this.size = size;
+            this.duplicate = duplicate;
+        }
+
+        public Path getPath() {
+            return path;
+        }
+
+        public String getSha256() {
+            return sha256;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public boolean isDuplicate() {
+            return duplicate;
+        }
+    }
+}
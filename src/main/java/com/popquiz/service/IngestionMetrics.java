@@ -0,0 +1,170 @@
+package com.popquiz.service;
+
+import com.popquiz.dto.IngestionRecordDto;
+import com.popquiz.model.Content;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * 内容处理指标
+ * 按阶段（store、queue、parse、normalize、persist、post-process）记录耗时，按内容类型和结果打标签，
+ * 通过 /actuator/metrics 暴露；同时保留最近的处理记录供管理员查看最慢的文档
+ */
+@Service
+public class IngestionMetrics {
+
+    public static final String STAGE_STORE = "store";
+    public static final String STAGE_QUEUE = "queue";
+    public static final String STAGE_PARSE = "parse";
+    public static final String STAGE_NORMALIZE = "normalize";
+    public static final String STAGE_PERSIST = "persist";
+    public static final String STAGE_POST_PROCESS = "post-process";
+
+    public static final String OUTCOME_SUCCESS = "success";
+    public static final String OUTCOME_DUPLICATE = "duplicate";
+    public static final String OUTCOME_RETRY = "retry";
+    public static final String OUTCOME_FAILURE = "failure";
+
+    private final MeterRegistry registry;
+    private final int recentSize;
+
+    // 最近的处理记录，超过上限时丢弃最早的
+    private final Deque<IngestionRecordDto> recent = new ArrayDeque<>();
+
+    public IngestionMetrics(MeterRegistry registry,
+                            ContentIngestionExecutor ingestionExecutor,
+                            @Value("${content.metrics.recent-size:200}") int recentSize) {
+        this.registry = registry;
+        this.recentSize = recentSize;
+        Gauge.builder("content.ingestion.queue.size", ingestionExecutor, ContentIngestionExecutor::getQueueSize)
+                .description("等待处理的内容数")
+                .register(registry);
+        Gauge.builder("content.ingestion.active", ingestionExecutor, ContentIngestionExecutor::getActiveCount)
+                .description("正在处理的内容数")
+                .register(registry);
+    }
+
+    /**
+     * 记录上传文件落盘耗时
+     */
+    public void recordStore(Content.ContentType type, String outcome, long nanos, long bytes) {
+        stageTimer(STAGE_STORE, type, outcome).record(nanos, TimeUnit.NANOSECONDS);
+        DistributionSummary.builder("content.ingestion.bytes")
+                .description("上传文件大小")
+                .baseUnit("bytes")
+                .tag("type", type.name())
+                .tag("outcome", outcome)
+                .register(registry)
+                .record(bytes);
+    }
+
+    /**
+     * 开始记录一次处理，enqueuedAtNanos 为入队时的 System.nanoTime()
+     */
+    public Run startRun(Content content, long enqueuedAtNanos) {
+        return new Run(content, System.nanoTime() - enqueuedAtNanos);
+    }
+
+    /**
+     * 最近处理记录中总耗时最长的若干条
+     */
+    public List<IngestionRecordDto> slowest(int limit) {
+        List<IngestionRecordDto> snapshot;
+        synchronized (recent) {
+            snapshot = new ArrayList<>(recent);
+        }
+        return snapshot.stream()
+                .sorted(Comparator.comparing(IngestionRecordDto::getTotalMs).reversed())
+                .limit(limit)
+                .collect(Collectors.toList());
+    }
+
+    private Timer stageTimer(String stage, Content.ContentType type, String outcome) {
+        return Timer.builder("content.ingestion.stage")
+                .description("内容处理各阶段耗时")
+                .tag("stage", stage)
+                .tag("type", type.name())
+                .tag("outcome", outcome)
+                .register(registry);
+    }
+
+    private void remember(IngestionRecordDto record) {
+        synchronized (recent) {
+            recent.addLast(record);
+            while (recent.size() > recentSize) {
+                recent.removeFirst();
+            }
+        }
+    }
+
+    /**
+     * 一次处理的阶段计时，结果确定后统一打上 outcome 标签写入指标
+     */
+    public class Run {
+        private final Content content;
+        private final Map<String, Long> stageNanos = new LinkedHashMap<>();
+
+        private Run(Content content, long queueWaitNanos) {
+            this.content = content;
+            stageNanos.put(STAGE_QUEUE, queueWaitNanos);
+        }
+
+        public void stage(String stage, long nanos) {
+            stageNanos.merge(stage, nanos, Long::sum);
+        }
+
+        public void finish(String outcome) {
+            Content.ContentType type = content.getType() != null ? content.getType() : Content.ContentType.OTHER;
+            long totalNanos = 0;
+            Map<String, Long> stageMs = new LinkedHashMap<>();
+            for (Map.Entry<String, Long> entry : stageNanos.entrySet()) {
+                stageTimer(entry.getKey(), type, outcome).record(entry.getValue(), TimeUnit.NANOSECONDS);
+                stageMs.put(entry.getKey(), TimeUnit.NANOSECONDS.toMillis(entry.getValue()));
+                totalNanos += entry.getValue();
+            }
+            registry.counter("content.ingestion.documents", "type", type.name(), "outcome", outcome).increment();
+
+            Long bytesPerSecond = null;
+            Long parseNanos = stageNanos.get(STAGE_PARSE);
+            if (content.getFileSize() != null && parseNanos != null && parseNanos > 0) {
+                bytesPerSecond = content.getFileSize() * 1_000_000_000L / parseNanos;
+                if (OUTCOME_SUCCESS.equals(outcome)) {
+                    DistributionSummary.builder("content.ingestion.throughput")
+                            .description("解析吞吐量")
+                            .baseUnit("bytes/s")
+                            .tag("type", type.name())
+                            .register(registry)
+                            .record(bytesPerSecond);
+                }
+            }
+
+            IngestionRecordDto record = new IngestionRecordDto();
+            record.setContentId(content.getId());
+            record.setTitle(content.getTitle());
+            record.setType(type.name());
+            record.setOutcome(outcome);
+            record.setFileSize(content.getFileSize());
+            record.setSegmentCount(content.getSegmentCount());
+            record.setStageMs(stageMs);
+            record.setTotalMs(TimeUnit.NANOSECONDS.toMillis(totalNanos));
+            record.setBytesPerSecond(bytesPerSecond);
+            record.setFinishedAt(LocalDateTime.now());
+            remember(record);
+        }
+    }
+}
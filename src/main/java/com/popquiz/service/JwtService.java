@@ -75,9 +75,13 @@ public class JwtService {
     }
     
     public boolean isTokenValid(String token, UserDetails userDetails) {
+        return isTokenValid(token, userDetails.getUsername());
+    }
+    
+    public boolean isTokenValid(String token, String expectedUsername) {
         try {
             final String username = extractUsername(token);
-            boolean valid = (username != null && username.equals(userDetails.getUsername())) && !isTokenExpired(token);
+            boolean valid = (username != null && username.equals(expectedUsername)) && !isTokenExpired(token);
             logger.debug("isTokenValid: username={}, valid={}", username, valid);
             return valid;
         } catch (Exception e) {
@@ -0,0 +1,57 @@
+package com.popquiz.service;
+
+import com.popquiz.repository.LectureRepository;
+import org.springframework.stereotype.Service;
+
+/**
+ * 讲座版本服务
+ * 讲座、内容、测验发生变化时递增讲座表中的版本号，读接口据此生成ETag，
+ * 客户端带 If-None-Match 的轮询请求只需按主键读取版本号即可返回304；
+ * 版本号存放在数据库中，任一节点上的修改对所有节点可见
+ */
+@Service
+public class LectureVersionService {
+
+    private final LectureRepository lectureRepository;
+
+    public LectureVersionService(LectureRepository lectureRepository) {
+        this.lectureRepository = lectureRepository;
+    }
+
+    /**
+     * 讲座数据发生变化；在调用方事务中递增版本号，与数据修改一同提交或回滚
+     */
+    public void bump(Long lectureId) {
+        if (lectureId == null) {
+            return;
+        }
+        lectureRepository.incrementDataVersion(lectureId);
+    }
+
+    /**
+     * 生成讲座某个视图的ETag
+     */
+    public String etag(Long lectureId, String view) {
+        Long version = lectureRepository.findDataVersion(lectureId);
+        return "\"" + lectureId + "-" + (version == null ? 0 : version) + "-" + view + "\"";
+    }
+
+    /**
+     * 判断请求的 If-None-Match 是否与当前ETag一致
+     */
+    public boolean notModified(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null || ifNoneMatch.isBlank()) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals(etag) || tag.equals("*")) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
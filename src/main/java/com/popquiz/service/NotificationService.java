@@ -5,6 +5,7 @@ import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Service;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -15,9 +16,11 @@ import java.util.Map;
 public class NotificationService {
     
     private final SimpMessagingTemplate messagingTemplate;
+    private final SseBroadcastService sseBroadcastService;
     
-    public NotificationService(SimpMessagingTemplate messagingTemplate) {
+    public NotificationService(SimpMessagingTemplate messagingTemplate, SseBroadcastService sseBroadcastService) {
         this.messagingTemplate = messagingTemplate;
+        this.sseBroadcastService = sseBroadcastService;
     }
     
     /**
@@ -40,6 +43,8 @@ public class NotificationService {
         notification.put("data", data);
         
         messagingTemplate.convertAndSend("/topic/" + topic, notification);
+        // 同一事件同步推送给只读的SSE订阅者
+        sseBroadcastService.publish(topic, type, notification);
     }
     
     /**
@@ -57,15 +62,15 @@ public class NotificationService {
     }
     
     /**
-     * 广播新评论通知
+     * 广播评论摘要通知（一个时间窗口内的新评论，含评论内容）
      */
-    public void broadcastNewComment(Long questionId, String username) {
+    public void broadcastCommentDigest(Long questionId, List<Map<String, Object>> comments) {
         Map<String, Object> data = new HashMap<>();
         data.put("questionId", questionId);
-        data.put("username", username);
+        data.put("comments", comments);
         data.put("timestamp", System.currentTimeMillis());
         
-        broadcastNotification("question." + questionId + ".comments", "NEW_COMMENT", data);
+        broadcastNotification("question." + questionId + ".comments", "COMMENT_DIGEST", data);
     }
 
     // === 新增：为QuizService补充的通知方法 ===
@@ -75,6 +80,14 @@ public class NotificationService {
         data.put("title", quiz.getTitle());
         data.put("status", quiz.getStatus());
         data.put("expiresAt", quiz.getExpiresAt());
+        if (quiz.getExpiresAt() != null) {
+            // 服务器时间与剩余时间，客户端据此校正本地时钟
+            long now = System.currentTimeMillis();
+            long expiresAtEpochMs = QuizCountdownService.toEpochMillis(quiz.getExpiresAt());
+            data.put("serverTime", now);
+            data.put("expiresAtEpochMs", expiresAtEpochMs);
+            data.put("remainingMs", Math.max(0, expiresAtEpochMs - now));
+        }
         broadcastLectureNotification(quiz.getLecture().getId(), "QUIZ_ACTIVATED", data);
     }
 
@@ -0,0 +1,115 @@
+package com.popquiz.service;
+
+import jakarta.annotation.PreDestroy;
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+
+/**
+ * PDF文本提取器
+ * 按页码区间拆分后在独立的ForkJoin池中并行提取，每个区间单独打开文档，
+ * 解析缓存超过上限的部分写入临时文件；各页文本按页码顺序逐页回调
+ */
+@Service
+public class PdfTextExtractor {
+
+    private final ForkJoinPool pool;
+
+    // 每个并行任务处理的页数
+    @Value("${content.pdf.pages-per-range:20}")
+    private int pagesPerRange;
+
+    // 每个文档实例在堆内缓存的最大字节数，超出部分使用临时文件
+    @Value("${content.pdf.max-main-memory-bytes:16777216}")
+    private long maxMainMemoryBytes;
+
+    public PdfTextExtractor(@Value("${content.pdf.parallelism:0}") int parallelism) {
+        int threads = parallelism > 0 ? parallelism : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        this.pool = new ForkJoinPool(threads, p -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+            thread.setName("pdf-extract-" + thread.getPoolIndex());
+            thread.setDaemon(true);
+            return thread;
+        }, null, false);
+    }
+
+    /**
+     * 每页文本提取完成后的回调，按页码顺序调用，页码从1开始
+     */
+    public interface PageListener {
+        void onPage(int pageNumber, int pageCount, String text);
+    }
+
+    /**
+     * 提取PDF全部文本，文本只通过回调交出，返回页数
+     */
+    public int extract(File file, PageListener listener) throws IOException {
+        int pageCount;
+        try (PDDocument document = load(file)) {
+            pageCount = document.getNumberOfPages();
+        }
+
+        List<CompletableFuture<List<String>>> ranges = new ArrayList<>();
+        for (int start = 1; start <= pageCount; start += pagesPerRange) {
+            int first = start;
+            int last = Math.min(pageCount, start + pagesPerRange - 1);
+            ranges.add(CompletableFuture.supplyAsync(() -> extractRange(file, first, last), pool));
+        }
+
+        int pageNumber = 0;
+        try {
+            // 按区间顺序等待，前面的区间完成后即可回调，不必等全部页提取完
+            for (CompletableFuture<List<String>> range : ranges) {
+                for (String pageText : range.join()) {
+                    pageNumber++;
+                    listener.onPage(pageNumber, pageCount, pageText);
+                }
+            }
+        } catch (CompletionException | CancellationException e) {
+            ranges.forEach(range -> range.cancel(true));
+            Throwable cause = e.getCause() instanceof UncheckedIOException io ? io.getCause() : e.getCause();
+            if (cause instanceof IOException io) {
+                throw io;
+            }
+            throw new RuntimeException("PDF文本提取失败", cause != null ? cause : e);
+        }
+        return pageCount;
+    }
+
+    private List<String> extractRange(File file, int firstPage, int lastPage) {
+        List<String> pages = new ArrayList<>(lastPage - firstPage + 1);
+        try (PDDocument document = load(file)) {
+            PDFTextStripper stripper = new PDFTextStripper();
+            for (int page = firstPage; page <= lastPage; page++) {
+                stripper.setStartPage(page);
+                stripper.setEndPage(page);
+                pages.add(stripper.getText(document));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return pages;
+    }
+
+    private PDDocument load(File file) throws IOException {
+        return PDDocument.load(file, MemoryUsageSetting.setupMixed(maxMainMemoryBytes));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+}
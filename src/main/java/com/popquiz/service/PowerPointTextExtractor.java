@@ -0,0 +1,152 @@
+package com.popquiz.service;
+
+import org.apache.poi.hslf.extractor.QuickButCruddyTextExtractor;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.openxml4j.opc.PackagePart;
+import org.apache.poi.openxml4j.opc.PackageRelationship;
+import org.apache.poi.openxml4j.opc.PackageRelationshipTypes;
+import org.apache.poi.poifs.filesystem.FileMagic;
+import org.springframework.stereotype.Service;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * PowerPoint文本提取器
+ * .pptx 直接从OPC包中按顺序读取幻灯片XML，用StAX逐个事件解析文本，不构建完整的幻灯片对象模型；
+ * .ppt 通过HSLF按记录扫描文本，不加载图片和版式
+ */
+@Service
+public class PowerPointTextExtractor {
+
+    private static final String NS_PRESENTATION = "http://schemas.openxmlformats.org/presentationml/2006/main";
+    private static final String NS_DRAWING = "http://schemas.openxmlformats.org/drawingml/2006/main";
+    private static final String NS_RELATIONSHIPS = "http://schemas.openxmlformats.org/officeDocument/2006/relationships";
+
+    private final XMLInputFactory xmlInputFactory;
+
+    public PowerPointTextExtractor() {
+        this.xmlInputFactory = XMLInputFactory.newFactory();
+        this.xmlInputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        this.xmlInputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    }
+
+    /**
+     * 每张幻灯片文本提取完成后的回调，按幻灯片顺序调用，编号从1开始
+     */
+    public interface SlideListener {
+        void onSlide(int slideNumber, String text);
+    }
+
+    /**
+     * 提取演示文稿全部文本，文本只通过回调交出，返回回调次数；根据文件头区分 .pptx 与 .ppt
+     */
+    public int extract(File file, SlideListener listener) throws Exception {
+        if (FileMagic.valueOf(file) == FileMagic.OLE2) {
+            return extractLegacy(file, listener);
+        }
+        return extractOpenXml(file, listener);
+    }
+
+    private int extractOpenXml(File file, SlideListener listener) throws Exception {
+        int slideNumber = 0;
+        try (OPCPackage pkg = OPCPackage.open(file, PackageAccess.READ)) {
+            PackageRelationship documentRel = pkg.getRelationshipsByType(PackageRelationshipTypes.CORE_DOCUMENT)
+                    .getRelationship(0);
+            if (documentRel == null) {
+                throw new RuntimeException("无效的PowerPoint文件");
+            }
+            PackagePart presentation = pkg.getPart(documentRel);
+
+            for (String relId : readSlideRelIds(presentation)) {
+                PackageRelationship slideRel = presentation.getRelationship(relId);
+                PackagePart slide = slideRel == null ? null : presentation.getRelatedPart(slideRel);
+                if (slide == null) {
+                    continue;
+                }
+                slideNumber++;
+                // 文本中不带幻灯片编号，插入或删除幻灯片后，其余幻灯片的文本（及指纹）保持不变
+                listener.onSlide(slideNumber, readSlideText(slide) + "\n");
+            }
+        }
+        return slideNumber;
+    }
+
+    // 从presentation.xml的sldIdLst中按放映顺序读出幻灯片关系ID
+    private List<String> readSlideRelIds(PackagePart presentation) throws IOException, XMLStreamException {
+        List<String> relIds = new ArrayList<>();
+        try (InputStream in = presentation.getInputStream()) {
+            XMLStreamReader reader = xmlInputFactory.createXMLStreamReader(in);
+            try {
+                while (reader.hasNext()) {
+                    if (reader.next() == XMLStreamConstants.START_ELEMENT
+                            && "sldId".equals(reader.getLocalName())
+                            && NS_PRESENTATION.equals(reader.getNamespaceURI())) {
+                        String relId = reader.getAttributeValue(NS_RELATIONSHIPS, "id");
+                        if (relId != null) {
+                            relIds.add(relId);
+                        }
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        }
+        return relIds;
+    }
+
+    // 收集幻灯片中所有 a:t 文本，每个非空段落（a:p）占一行
+    private String readSlideText(PackagePart slide) throws IOException, XMLStreamException {
+        StringBuilder text = new StringBuilder();
+        StringBuilder paragraph = new StringBuilder();
+        boolean inText = false;
+        try (InputStream in = slide.getInputStream()) {
+            XMLStreamReader reader = xmlInputFactory.createXMLStreamReader(in);
+            try {
+                while (reader.hasNext()) {
+                    int event = reader.next();
+                    if (event == XMLStreamConstants.START_ELEMENT && NS_DRAWING.equals(reader.getNamespaceURI())) {
+                        if ("t".equals(reader.getLocalName())) {
+                            inText = true;
+                        } else if ("br".equals(reader.getLocalName())) {
+                            paragraph.append('\n');
+                        }
+                    } else if (event == XMLStreamConstants.END_ELEMENT && NS_DRAWING.equals(reader.getNamespaceURI())) {
+                        if ("t".equals(reader.getLocalName())) {
+                            inText = false;
+                        } else if ("p".equals(reader.getLocalName())) {
+                            if (!paragraph.toString().isBlank()) {
+                                text.append(paragraph).append('\n');
+                            }
+                            paragraph.setLength(0);
+                        }
+                    } else if (inText && (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA)) {
+                        paragraph.append(reader.getText());
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        }
+        return text.toString();
+    }
+
+    // .ppt 没有按幻灯片划分的轻量接口，整份文本作为一段回调
+    private int extractLegacy(File file, SlideListener listener) throws IOException {
+        QuickButCruddyTextExtractor extractor = new QuickButCruddyTextExtractor(file.getPath());
+        try {
+            listener.onSlide(1, extractor.getTextAsString());
+            return 1;
+        } finally {
+            extractor.close();
+        }
+    }
+}
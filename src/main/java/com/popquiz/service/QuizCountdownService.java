@@ -0,0 +1,107 @@
+package com.popquiz.service;
+
+import com.popquiz.model.Quiz;
+import com.popquiz.repository.QuizRepository;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 测验倒计时服务
+ * 以服务器时钟为准，在测验激活时下发时间同步消息，并定期下发粗粒度的倒计时心跳，
+ * 客户端据此计算本地时钟偏差并渲染倒计时，无需轮询测验状态；
+ * 心跳只由持有锁的节点按数据库中进行中的测验下发，多节点部署时不会重复推送；
+ * 本节点没有登记中的倒计时时心跳直接跳过，不抢锁也不查询数据库
+ */
+@Service
+public class QuizCountdownService {
+
+    private final NotificationService notificationService;
+    private final QuizRepository quizRepository;
+    private final SchedulerLockService schedulerLockService;
+
+    // 本节点登记的倒计时：测验ID -> 截止时间（毫秒）
+    private final Map<Long, Long> armed = new ConcurrentHashMap<>();
+
+    public QuizCountdownService(NotificationService notificationService,
+                                QuizRepository quizRepository,
+                                SchedulerLockService schedulerLockService) {
+        this.notificationService = notificationService;
+        this.quizRepository = quizRepository;
+        this.schedulerLockService = schedulerLockService;
+    }
+
+    /**
+     * 测验激活后立即下发一次时间同步，由激活测验的节点调用
+     */
+    public void start(Quiz quiz) {
+        if (quiz.getExpiresAt() == null) {
+            return;
+        }
+        arm(quiz);
+        broadcast(quiz, "QUIZ_TIME_SYNC", System.currentTimeMillis());
+    }
+
+    /**
+     * 登记倒计时，使本节点开始下发心跳；启动恢复进行中的测验时也会调用
+     */
+    public void arm(Quiz quiz) {
+        if (quiz.getExpiresAt() == null) {
+            return;
+        }
+        armed.put(quiz.getId(), toEpochMillis(quiz.getExpiresAt()));
+    }
+
+    /**
+     * 测验结束后取消登记
+     */
+    public void disarm(Long quizId) {
+        armed.remove(quizId);
+    }
+
+    /**
+     * 定时下发倒计时心跳，供客户端校正时钟漂移；集群中只由持有锁的节点下发
+     */
+    @Scheduled(fixedRateString = "${quiz.countdown-tick-ms:5000}")
+    public void tick() {
+        long now = System.currentTimeMillis();
+        armed.values().removeIf(expiresAtEpochMs -> expiresAtEpochMs <= now);
+        if (armed.isEmpty()) {
+            return;
+        }
+        if (!schedulerLockService.tryAcquire("quiz-countdown-tick")) {
+            return;
+        }
+        Set<Long> activeQuizIds = new HashSet<>();
+        for (Quiz quiz : quizRepository.findByStatus(Quiz.QuizStatus.ACTIVE)) {
+            if (quiz.getExpiresAt() == null || toEpochMillis(quiz.getExpiresAt()) <= now) {
+                continue;
+            }
+            activeQuizIds.add(quiz.getId());
+            broadcast(quiz, "QUIZ_TIME_TICK", now);
+        }
+        // 已被提前结束的测验不再保留登记
+        armed.keySet().retainAll(activeQuizIds);
+    }
+
+    public static long toEpochMillis(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    private void broadcast(Quiz quiz, String type, long now) {
+        long expiresAtEpochMs = toEpochMillis(quiz.getExpiresAt());
+        Map<String, Object> data = new HashMap<>();
+        data.put("quizId", quiz.getId());
+        data.put("serverTime", now);
+        data.put("expiresAtEpochMs", expiresAtEpochMs);
+        data.put("remainingMs", Math.max(0, expiresAtEpochMs - now));
+        notificationService.broadcastLectureNotification(quiz.getLecture().getId(), type, data);
+    }
+}
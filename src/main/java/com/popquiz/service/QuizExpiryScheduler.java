@@ -0,0 +1,140 @@
+package com.popquiz.service;
+
+import com.popquiz.model.Quiz;
+import com.popquiz.repository.QuizRepository;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 测验过期调度器
+ * 测验激活时按 expiresAt 精确登记一次延迟任务，到期后立即结束测验，
+ * 取代按固定间隔轮询数据库的方式；应用启动时从数据库恢复未到期的测验
+ */
+@Service
+public class QuizExpiryScheduler {
+
+    private static final Logger logger = LoggerFactory.getLogger(QuizExpiryScheduler.class);
+
+    private final QuizRepository quizRepository;
+    private final NotificationService notificationService;
+    private final QuizPayloadCache quizPayloadCache;
+    private final LectureVersionService lectureVersionService;
+    private final QuizCountdownService quizCountdownService;
+    private final TransactionTemplate transactionTemplate;
+
+    // 基于延迟队列的调度线程，单线程即可满足过期处理的吞吐
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "quiz-expiry");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // 测验ID -> 已登记的过期任务
+    private final Map<Long, ScheduledFuture<?>> pending = new ConcurrentHashMap<>();
+
+    public QuizExpiryScheduler(
+            QuizRepository quizRepository,
+            NotificationService notificationService,
+            QuizPayloadCache quizPayloadCache,
+            LectureVersionService lectureVersionService,
+            QuizCountdownService quizCountdownService,
+            PlatformTransactionManager transactionManager) {
+        this.quizRepository = quizRepository;
+        this.notificationService = notificationService;
+        this.quizPayloadCache = quizPayloadCache;
+        this.lectureVersionService = lectureVersionService;
+        this.quizCountdownService = quizCountdownService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * 登记测验的过期时间，重复登记会替换之前的任务
+     */
+    public void schedule(Quiz quiz) {
+        if (quiz.getExpiresAt() == null) {
+            return;
+        }
+        Long quizId = quiz.getId();
+        long delayMs = QuizCountdownService.toEpochMillis(quiz.getExpiresAt()) - System.currentTimeMillis();
+        ScheduledFuture<?> future = executor.schedule(() -> {
+            pending.remove(quizId);
+            try {
+                expire(quizId);
+            } catch (Exception e) {
+                // 失败时交由兜底巡检处理
+                logger.error("测验过期处理失败: quizId={}", quizId, e);
+            }
+        }, Math.max(0, delayMs), TimeUnit.MILLISECONDS);
+
+        ScheduledFuture<?> previous = pending.put(quizId, future);
+        if (previous != null) {
+            previous.cancel(false);
+        }
+    }
+
+    /**
+     * 结束测验，只有仍处于进行中的测验才会被更新和广播，可安全重复调用
+     */
+    public boolean expire(Long quizId) {
+        Boolean expired = transactionTemplate.execute(status -> {
+            int updated = quizRepository.updateStatusIfCurrent(
+                    quizId, Quiz.QuizStatus.ACTIVE, Quiz.QuizStatus.EXPIRED, LocalDateTime.now());
+            if (updated == 0) {
+                return false;
+            }
+            Quiz quiz = quizRepository.findById(quizId)
+                    .orElseThrow(() -> new RuntimeException("测验不存在"));
+            lectureVersionService.bump(quiz.getLecture().getId());
+            notificationService.broadcastQuizExpired(quiz);
+            return true;
+        });
+        quizPayloadCache.evict(quizId);
+        quizCountdownService.disarm(quizId);
+        ScheduledFuture<?> future = pending.remove(quizId);
+        if (future != null) {
+            future.cancel(false);
+        }
+        return Boolean.TRUE.equals(expired);
+    }
+
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * 启动时恢复数据库中仍在进行的测验，已过期的会立即结束；
+     * 结束操作是条件更新，多个节点都登记也只会结束一次。同时登记倒计时，心跳仍只由持有锁的节点下发
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void rehydrate() {
+        List<Quiz> activeQuizzes = quizRepository.findByStatus(Quiz.QuizStatus.ACTIVE);
+        if (activeQuizzes.isEmpty()) {
+            return;
+        }
+        for (Quiz quiz : activeQuizzes) {
+            schedule(quiz);
+            quizCountdownService.arm(quiz);
+        }
+        logger.info("已恢复 {} 个进行中测验的过期任务", activeQuizzes.size());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,280 @@
+package com.popquiz.service;
+
+import com.popquiz.ai.HuggingFaceService;
+import com.popquiz.ai.LlmClient;
+import com.popquiz.ai.QuizQuestion;
+import com.popquiz.model.QuestionSource;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+
+/**
+ * AI出题结果缓存
+ * 以规范化后的各块输入文本、题目数量、难度和模型名的哈希为键，相同输入不再重复调用模型；
+ * 每次生成结果带一个预览ID，创建测验时引用预览ID即可原样保存预览过的题目。
+ * 按条数（最近最少使用）和存活时间淘汰；相同键的并发请求只调用一次模型
+ */
+@Service
+public class QuizGenerationCache {
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private final HuggingFaceService huggingFaceService;
+    private final ChunkedQuizGenerator chunkedQuizGenerator;
+    private final int maxEntries;
+    private final long ttlMs;
+
+    // 缓存键 -> 生成结果，按访问顺序排列，超出条数时淘汰最久未使用的
+    private final LinkedHashMap<String, CachedGeneration> entries;
+    // 预览ID -> 缓存键
+    private final Map<String, String> previewIndex = new HashMap<>();
+    // 正在调用模型的键，相同键的并发请求等待同一个结果
+    private final Map<String, InFlight> inFlight = new ConcurrentHashMap<>();
+
+    private final Counter hits;
+    private final Counter misses;
+
+    public QuizGenerationCache(HuggingFaceService huggingFaceService,
+                               ChunkedQuizGenerator chunkedQuizGenerator,
+                               MeterRegistry registry,
+                               @Value("${quiz.generation-cache.max-entries:500}") int maxEntries,
+                               @Value("${quiz.generation-cache.ttl-minutes:60}") long ttlMinutes) {
+        this.huggingFaceService = huggingFaceService;
+        this.chunkedQuizGenerator = chunkedQuizGenerator;
+        this.maxEntries = maxEntries;
+        this.ttlMs = ttlMinutes * 60_000L;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedGeneration> eldest) {
+                if (size() > QuizGenerationCache.this.maxEntries) {
+                    previewIndex.remove(eldest.getValue().getPreviewId());
+                    return true;
+                }
+                return false;
+            }
+        };
+        this.hits = registry.counter("quiz.generation.cache", "result", "hit");
+        this.misses = registry.counter("quiz.generation.cache", "result", "miss");
+        Gauge.builder("quiz.generation.cache.size", this, QuizGenerationCache::size).register(registry);
+    }
+
+    /**
+     * 按输入获取生成结果，未命中时调用模型并缓存
+     */
+    public CachedGeneration getOrGenerate(Long lectureId, List<ContentSegmentService.SourceText> chunks,
+                                          int questionCount, int difficultyLevel) {
+        return getOrGenerate(lectureId, chunks, questionCount, difficultyLevel, null);
+    }
+
+    /**
+     * 同上，每道题生成完整后交给listener；命中缓存时立即按顺序回放缓存的题目
+     */
+    public CachedGeneration getOrGenerate(Long lectureId, List<ContentSegmentService.SourceText> chunks,
+                                          int questionCount, int difficultyLevel,
+                                          Consumer<QuizQuestion> listener) {
+        return LlmClient.await(getOrGenerateAsync(lectureId, chunks, questionCount, difficultyLevel, listener));
+    }
+
+    /**
+     * 异步获取生成结果：命中缓存时返回已完成的future并立即回放题目，
+     * 未命中时按块并行调用模型，每道题生成完整并去重后交给listener
+     */
+    public CompletableFuture<CachedGeneration> getOrGenerateAsync(Long lectureId,
+                                                                  List<ContentSegmentService.SourceText> chunks,
+                                                                  int questionCount, int difficultyLevel,
+                                                                  Consumer<QuizQuestion> listener) {
+        String key = key(lectureId, chunks, questionCount, difficultyLevel);
+        CachedGeneration cached = lookup(key);
+        if (cached != null) {
+            hits.increment();
+            return CompletableFuture.completedFuture(replay(cached, listener));
+        }
+
+        InFlight pending = new InFlight();
+        InFlight existing = inFlight.putIfAbsent(key, pending);
+        if (existing != null) {
+            hits.increment();
+            return existing.join().thenApply(generation -> replay(generation, listener));
+        }
+        misses.increment();
+        CompletableFuture<CachedGeneration> future = pending.future;
+        CompletableFuture<ChunkedQuizGenerator.Result> call;
+        try {
+            call = chunkedQuizGenerator.generateAsync(chunks, questionCount, difficultyLevel, listener);
+        } catch (RuntimeException e) {
+            inFlight.remove(key, pending);
+            future.completeExceptionally(e);
+            return future.copy();
+        }
+        pending.call = call;
+        call.whenComplete((merged, error) -> {
+            if (error != null) {
+                inFlight.remove(key, pending);
+                future.completeExceptionally(error instanceof CompletionException && error.getCause() != null
+                        ? error.getCause() : error);
+                return;
+            }
+            if (merged == null || merged.getQuestions().isEmpty()) {
+                inFlight.remove(key, pending);
+                future.completeExceptionally(new RuntimeException("AI生成测验问题失败，返回结果为空"));
+                return;
+            }
+            CachedGeneration generation = new CachedGeneration(UUID.randomUUID().toString(), lectureId,
+                    List.copyOf(merged.getQuestions()), List.copyOf(merged.getQuestionSources()),
+                    System.currentTimeMillis());
+            // 先写入缓存再移出进行中列表，期间到达的相同请求不会再次调用模型
+            synchronized (this) {
+                entries.put(key, generation);
+                previewIndex.put(generation.getPreviewId(), key);
+            }
+            inFlight.remove(key, pending);
+            future.complete(generation);
+        });
+        return pending.join();
+    }
+
+    /**
+     * 一次进行中的生成。每个等待者拿到一个副本，取消副本不影响其他等待者；
+     * 所有等待者都取消后才取消模型调用
+     */
+    private static class InFlight {
+        private final CompletableFuture<CachedGeneration> future = new CompletableFuture<>();
+        private volatile CompletableFuture<ChunkedQuizGenerator.Result> call;
+        private int waiters;
+
+        synchronized CompletableFuture<CachedGeneration> join() {
+            waiters++;
+            CompletableFuture<CachedGeneration> copy = future.copy();
+            copy.whenComplete((generation, error) -> {
+                if (copy.isCancelled()) {
+                    leave();
+                }
+            });
+            return copy;
+        }
+
+        private void leave() {
+            CompletableFuture<ChunkedQuizGenerator.Result> toCancel = null;
+            synchronized (this) {
+                if (--waiters == 0 && !future.isDone()) {
+                    toCancel = call;
+                }
+            }
+            if (toCancel != null) {
+                toCancel.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * 按预览ID取回预览过的题目，已过期或被淘汰时返回null
+     */
+    public CachedGeneration getPreview(String previewId) {
+        String key;
+        synchronized (this) {
+            key = previewIndex.get(previewId);
+        }
+        return key != null ? lookup(key) : null;
+    }
+
+    private synchronized CachedGeneration lookup(String key) {
+        CachedGeneration cached = entries.get(key);
+        if (cached == null) {
+            return null;
+        }
+        if (System.currentTimeMillis() - cached.createdAt > ttlMs) {
+            entries.remove(key);
+            previewIndex.remove(cached.getPreviewId());
+            return null;
+        }
+        return cached;
+    }
+
+    private CachedGeneration replay(CachedGeneration generation, Consumer<QuizQuestion> listener) {
+        if (listener != null) {
+            generation.getQuestions().forEach(listener);
+        }
+        return generation;
+    }
+
+    private synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * 缓存键：空白压缩后的各块文本（含分块边界）、题目数量、难度和模型名的SHA-256；
+     * 同时按讲座区分，保证记录的来源分段属于该讲座
+     */
+    private String key(Long lectureId, List<ContentSegmentService.SourceText> chunks,
+                       int questionCount, int difficultyLevel) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update((lectureId + "\n" + questionCount + "\n" + difficultyLevel + "\n"
+                    + huggingFaceService.getModelName() + "\n").getBytes(StandardCharsets.UTF_8));
+            for (ContentSegmentService.SourceText chunk : chunks) {
+                String normalized = WHITESPACE.matcher(chunk.getText()).replaceAll(" ").trim();
+                digest.update(normalized.getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("不支持SHA-256算法", e);
+        }
+    }
+
+    /**
+     * 一次生成的结果，题目和每道题的来源分段均不可修改
+     */
+    public static class CachedGeneration {
+        private final String previewId;
+        private final Long lectureId;
+        private final List<QuizQuestion> questions;
+        private final List<List<QuestionSource>> questionSources;
+        private final long createdAt;
+
+        CachedGeneration(String previewId, Long lectureId, List<QuizQuestion> questions,
+                         List<List<QuestionSource>> questionSources, long createdAt) {
+            this.previewId = previewId;
+            this.lectureId = lectureId;
+            this.questions = questions;
+            this.questionSources = questionSources;
+            this.createdAt = createdAt;
+        }
+
+        public String getPreviewId() {
+            return previewId;
+        }
+
+        public Long getLectureId() {
+            return lectureId;
+        }
+
+        public List<QuizQuestion> getQuestions() {
+            return questions;
+        }
+
+        /**
+         * 第index道题（从0开始）出题时使用的分段
+         */
+        public List<QuestionSource> getSources(int index) {
+            return questionSources.get(index);
+        }
+    }
+}
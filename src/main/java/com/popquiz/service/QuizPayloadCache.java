@@ -0,0 +1,174 @@
+package com.popquiz.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.popquiz.dto.OptionDto;
+import com.popquiz.dto.QuestionDto;
+import com.popquiz.dto.QuizDetailsDto;
+import com.popquiz.model.Question;
+import com.popquiz.model.Quiz;
+import com.popquiz.repository.QuestionRepository;
+import com.popquiz.repository.QuizRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * 测验详情缓存
+ * 在发布和激活测验时将听众视角的测验详情一次性序列化为字节，
+ * 测验开始瞬间大量听众的请求直接返回缓存字节，不再重复查询数据库和构建DTO；
+ * 进行中的测验缓存到截止时间，其他状态只缓存很短时间，到期后重新从数据库确认状态，
+ * 其他节点激活或结束测验后本节点也能及时看到
+ */
+@Service
+public class QuizPayloadCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(QuizPayloadCache.class);
+
+    private final QuizRepository quizRepository;
+    private final QuestionRepository questionRepository;
+    private final ObjectMapper objectMapper;
+
+    // 测验ID -> 预渲染的测验详情
+    private final Map<Long, RenderedQuiz> cache = new ConcurrentHashMap<>();
+
+    // 非进行中（如已发布待激活）测验的缓存时间
+    @Value("${quiz.payload-cache.status-ttl-ms:2000}")
+    private long statusTtlMs;
+
+    public QuizPayloadCache(
+            QuizRepository quizRepository,
+            QuestionRepository questionRepository,
+            ObjectMapper objectMapper) {
+        this.quizRepository = quizRepository;
+        this.questionRepository = questionRepository;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * 渲染并缓存测验详情，需在事务内调用以加载题目选项
+     */
+    public RenderedQuiz render(Quiz quiz) {
+        List<Question> questions = questionRepository.findByQuizOrderBySequenceNumberAsc(quiz);
+
+        QuizDetailsDto dto = new QuizDetailsDto();
+        dto.setQuizId(quiz.getId());
+        dto.setTitle(quiz.getTitle());
+        dto.setTimeLimit(quiz.getTimeLimit());
+        dto.setExpiresAt(quiz.getExpiresAt());
+        dto.setQuestions(questions.stream().map(q -> {
+            QuestionDto d = new QuestionDto();
+            d.setId(q.getId());
+            d.setContent(q.getContent());
+            d.setType(q.getType().name());
+            d.setSequenceNumber(q.getSequenceNumber());
+            d.setOptions(q.getOptions().stream().map(o -> {
+                OptionDto od = new OptionDto();
+                od.setId(o.getId());
+                od.setContent(o.getContent());
+                od.setLabel(String.valueOf(o.getOptionLabel()));
+                return od;
+            }).collect(Collectors.toList()));
+            return d;
+        }).collect(Collectors.toList()));
+
+        try {
+            Long expiresAtEpochMs = quiz.getExpiresAt() != null
+                    ? QuizCountdownService.toEpochMillis(quiz.getExpiresAt()) : null;
+            long validUntil = quiz.getStatus() == Quiz.QuizStatus.ACTIVE && expiresAtEpochMs != null
+                    ? expiresAtEpochMs
+                    : System.currentTimeMillis() + statusTtlMs;
+            RenderedQuiz rendered = new RenderedQuiz(quiz.getStatus(), expiresAtEpochMs, validUntil,
+                    objectMapper.writeValueAsBytes(dto));
+            cache.put(quiz.getId(), rendered);
+            return rendered;
+        } catch (Exception e) {
+            logger.error("测验详情序列化失败: quizId={}", quiz.getId(), e);
+            throw new RuntimeException("测验详情序列化失败", e);
+        }
+    }
+
+    /**
+     * 获取缓存的测验详情，未命中时从数据库加载并缓存
+     */
+    @Transactional(readOnly = true)
+    public RenderedQuiz get(Long quizId) {
+        RenderedQuiz rendered = cache.get(quizId);
+        if (rendered != null && !rendered.isStale(System.currentTimeMillis())) {
+            return rendered;
+        }
+        // 过期的条目（例如由其他节点激活或结束的测验）重新从数据库确认状态
+        cache.remove(quizId);
+        Quiz quiz = quizRepository.findById(quizId)
+                .orElseThrow(() -> new RuntimeException("测验不存在"));
+        if (quiz.getStatus() != Quiz.QuizStatus.PUBLISHED && quiz.getStatus() != Quiz.QuizStatus.ACTIVE) {
+            // 草稿或已结束的测验不缓存，只返回状态
+            return new RenderedQuiz(quiz.getStatus(), null, 0, null);
+        }
+        return render(quiz);
+    }
+
+    public void evict(Long quizId) {
+        cache.remove(quizId);
+    }
+
+    /**
+     * 定期清理过期条目，已结束且不再被请求的测验不会一直留在内存中
+     */
+    @Scheduled(fixedDelayString = "${quiz.payload-cache.sweep-ms:60000}")
+    public void evictStale() {
+        long now = System.currentTimeMillis();
+        cache.values().removeIf(rendered -> rendered.isStale(now));
+    }
+
+    /**
+     * 预渲染的测验详情，body 为不可变的JSON字节
+     */
+    public static class RenderedQuiz {
+        private final Quiz.QuizStatus status;
+        private final Long expiresAtEpochMs;
+        // 超过该时间后需要重新从数据库确认状态
+        private final long validUntilEpochMs;
+        private final byte[] body;
+
+        RenderedQuiz(Quiz.QuizStatus status, Long expiresAtEpochMs, long validUntilEpochMs, byte[] body) {
+            this.status = status;
+            this.expiresAtEpochMs = expiresAtEpochMs;
+            this.validUntilEpochMs = validUntilEpochMs;
+            this.body = body;
+        }
+
+        public Quiz.QuizStatus getStatus() {
+            return status;
+        }
+
+        boolean isStale(long now) {
+            return now >= validUntilEpochMs;
+        }
+
+        /**
+         * 在缓存的JSON前拼接本次请求的服务器时间与剩余时间，不重新序列化题目
+         */
+        public byte[] toResponseBody(long now) {
+            StringBuilder prefix = new StringBuilder("{\"serverTime\":").append(now);
+            if (expiresAtEpochMs != null) {
+                prefix.append(",\"remainingMs\":").append(Math.max(0, expiresAtEpochMs - now));
+            }
+            prefix.append(',');
+            byte[] head = prefix.toString().getBytes(StandardCharsets.UTF_8);
+            // body 以 '{' 开头，跳过该字节后拼接
+            byte[] out = new byte[head.length + body.length - 1];
+            System.arraycopy(head, 0, out, 0, head.length);
+            System.arraycopy(body, 1, out, head.length, body.length - 1);
+            return out;
+        }
+    }
+}
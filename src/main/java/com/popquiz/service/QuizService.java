@@ -1,16 +1,22 @@
 package com.popquiz.service;
 
-import com.popquiz.ai.HuggingFaceService;
+import com.popquiz.ai.LlmClient;
 import com.popquiz.ai.QuizOption;
 import com.popquiz.ai.QuizQuestion;
 import com.popquiz.model.*;
 import com.popquiz.repository.*;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 /**
@@ -20,7 +26,9 @@ import java.util.stream.Collectors;
 @Service
 public class QuizService {
 
-    private final HuggingFaceService huggingFaceService;
+    // 按关注点检索时送入模型的最大文本长度
+    private static final int MAX_PROMPT_CHARS = 1800;
+
     private final QuizRepository quizRepository;
     private final QuestionRepository questionRepository;
     private final ContentRepository contentRepository;
@@ -28,18 +36,34 @@ public class QuizService {
     private final UserResponseRepository userResponseRepository;
     private final UserRepository userRepository;
     private final NotificationService notificationService;
+    private final QuizCountdownService quizCountdownService;
+    private final QuizExpiryScheduler quizExpiryScheduler;
+    private final SchedulerLockService schedulerLockService;
+    private final QuizPayloadCache quizPayloadCache;
+    private final LectureVersionService lectureVersionService;
+    private final ContentIndexService contentIndexService;
+    private final QuizGenerationCache quizGenerationCache;
+    private final ChunkedQuizGenerator chunkedQuizGenerator;
+    private final TransactionTemplate transactionTemplate;
 
     public QuizService(
-            HuggingFaceService huggingFaceService,
             QuizRepository quizRepository,
             QuestionRepository questionRepository,
             ContentRepository contentRepository,
             LectureRepository lectureRepository,
             UserResponseRepository userResponseRepository,
             UserRepository userRepository,
-            NotificationService notificationService
+            NotificationService notificationService,
+            QuizCountdownService quizCountdownService,
+            QuizExpiryScheduler quizExpiryScheduler,
+            SchedulerLockService schedulerLockService,
+            QuizPayloadCache quizPayloadCache,
+            LectureVersionService lectureVersionService,
+            ContentIndexService contentIndexService,
+            QuizGenerationCache quizGenerationCache,
+            ChunkedQuizGenerator chunkedQuizGenerator,
+            PlatformTransactionManager transactionManager
     ) {
-        this.huggingFaceService = huggingFaceService;
         this.quizRepository = quizRepository;
         this.questionRepository = questionRepository;
         this.contentRepository = contentRepository;
@@ -47,46 +71,112 @@ public class QuizService {
         this.userResponseRepository = userResponseRepository;
         this.userRepository = userRepository;
         this.notificationService = notificationService;
+        this.quizCountdownService = quizCountdownService;
+        this.quizExpiryScheduler = quizExpiryScheduler;
+        this.schedulerLockService = schedulerLockService;
+        this.quizPayloadCache = quizPayloadCache;
+        this.lectureVersionService = lectureVersionService;
+        this.contentIndexService = contentIndexService;
+        this.quizGenerationCache = quizGenerationCache;
+        this.chunkedQuizGenerator = chunkedQuizGenerator;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
     }
 
     /**
      * 只生成AI测验题目（用于预览，不入库，适配 /api/lectures/{lectureId}/generate-quiz）
      */
     public List<QuizQuestion> generateQuizQuestions(Long lectureId, int questionCount, int optionCount, int difficultyLevel) {
+        return generateQuizQuestions(lectureId, questionCount, optionCount, difficultyLevel, null);
+    }
+
+    /**
+     * 生成预览题目，focus不为空时从全文索引中挑选与之相关的段落出题
+     */
+    public List<QuizQuestion> generateQuizQuestions(Long lectureId, int questionCount, int optionCount,
+                                                    int difficultyLevel, String focus) {
+        return previewQuizQuestions(lectureId, questionCount, difficultyLevel, focus).getQuestions();
+    }
+
+    /**
+     * 生成预览题目并返回带预览ID的缓存结果，创建测验时可引用该ID原样保存
+     */
+    public QuizGenerationCache.CachedGeneration previewQuizQuestions(Long lectureId, int questionCount,
+                                                                     int difficultyLevel, String focus) {
+        return previewQuizQuestions(lectureId, questionCount, difficultyLevel, focus, null);
+    }
+
+    /**
+     * 生成预览题目，每道题生成完整后立即交给listener，用于边生成边推送给主讲人
+     */
+    public QuizGenerationCache.CachedGeneration previewQuizQuestions(Long lectureId, int questionCount,
+                                                                     int difficultyLevel, String focus,
+                                                                     Consumer<QuizQuestion> listener) {
+        return LlmClient.await(previewQuizQuestionsAsync(lectureId, questionCount, difficultyLevel, focus, listener));
+    }
+
+    /**
+     * 异步生成预览题目：选取出题文本在调用线程上完成，模型调用不占用调用线程
+     */
+    public CompletableFuture<QuizGenerationCache.CachedGeneration> previewQuizQuestionsAsync(
+            Long lectureId, int questionCount, int difficultyLevel, String focus, Consumer<QuizQuestion> listener) {
         Lecture lecture = lectureRepository.findById(lectureId)
                 .orElseThrow(() -> new RuntimeException("讲座不存在"));
+        return generateAsync(lecture, questionCount, difficultyLevel, focus, listener);
+    }
+
+    private CompletableFuture<QuizGenerationCache.CachedGeneration> generateAsync(
+            Lecture lecture, int questionCount, int difficultyLevel, String focus, Consumer<QuizQuestion> listener) {
         List<Content> contents = contentRepository.findByLectureAndProcessStatus(lecture, Content.ProcessStatus.COMPLETED);
         if (contents.isEmpty()) {
             throw new RuntimeException("讲座没有可用的已处理内容");
         }
-        String combinedText = contents.stream()
-                .map(Content::getExtractedText)
-                .filter(t -> t != null && !t.isBlank())
-                .collect(Collectors.joining("\n\n"));
-        if (combinedText.length() > 1800) {
-            combinedText = combinedText.substring(0, 1800);
-        }
-        return huggingFaceService.generateQuizQuestions(combinedText, questionCount, difficultyLevel);
+        List<ContentSegmentService.SourceText> chunks = selectSourceText(lecture, contents, focus);
+        return quizGenerationCache.getOrGenerateAsync(lecture.getId(), chunks, questionCount, difficultyLevel, listener);
     }
 
     /**
-     * 创建新测验（并保存所有题/选项）
+     * 创建新测验（并保存所有题/选项），同步等待出题完成
      */
-    @Transactional
     public Quiz createQuizForLecture(Long lectureId, String title, int questionCount, int difficultyLevel) {
+        return createQuizForLecture(lectureId, title, questionCount, difficultyLevel, null);
+    }
+
+    public Quiz createQuizForLecture(Long lectureId, String title, int questionCount, int difficultyLevel, String focus) {
+        return createQuizForLecture(lectureId, title, questionCount, difficultyLevel, focus, null);
+    }
+
+    public Quiz createQuizForLecture(Long lectureId, String title, int questionCount, int difficultyLevel,
+                                     String focus, String previewId) {
+        return LlmClient.await(createQuizForLectureAsync(lectureId, title, questionCount, difficultyLevel,
+                focus, previewId));
+    }
+
+    /**
+     * 异步创建测验；previewId不为空时保存该次预览的题目，不再调用模型。
+     * 出题在事务外进行，题目就绪后才在短事务中保存，等待模型期间不占用数据库连接
+     */
+    public CompletableFuture<Quiz> createQuizForLectureAsync(Long lectureId, String title, int questionCount,
+                                                             int difficultyLevel, String focus, String previewId) {
         Lecture lecture = lectureRepository.findById(lectureId)
                 .orElseThrow(() -> new RuntimeException("讲座不存在"));
-        List<Content> contents = contentRepository.findByLectureAndProcessStatus(lecture, Content.ProcessStatus.COMPLETED);
-        if (contents.isEmpty()) {
-            throw new RuntimeException("讲座没有可用的已处理内容");
-        }
-        String combinedText = contents.stream()
-                .map(Content::getExtractedText)
-                .filter(t -> t != null && !t.isBlank())
-                .collect(Collectors.joining("\n\n"));
-        if (combinedText.length() > 1800) {
-            combinedText = combinedText.substring(0, 1800);
+        CompletableFuture<QuizGenerationCache.CachedGeneration> generation;
+        if (previewId != null && !previewId.isBlank()) {
+            QuizGenerationCache.CachedGeneration preview = quizGenerationCache.getPreview(previewId);
+            if (preview == null || !preview.getLectureId().equals(lectureId)) {
+                throw new RuntimeException("预览已过期，请重新生成题目");
+            }
+            generation = CompletableFuture.completedFuture(preview);
+        } else {
+            generation = generateAsync(lecture, questionCount, difficultyLevel, focus, null);
         }
+        return generation.thenApply(result -> transactionTemplate.execute(status ->
+                saveQuiz(lecture, title, difficultyLevel, result)));
+    }
+
+    private Quiz saveQuiz(Lecture lecture, String title, int difficultyLevel,
+                          QuizGenerationCache.CachedGeneration generation) {
+        Long lectureId = lecture.getId();
+        List<QuizQuestion> generatedQuestions = generation.getQuestions();
 
         // 设置测验序号
         int quizCount = quizRepository.findByLecture(lecture).size();
@@ -96,15 +186,12 @@ public class QuizService {
         quiz.setStatus(Quiz.QuizStatus.DRAFT);
         quiz.setCreatedAt(LocalDateTime.now());
         quiz.setUpdatedAt(LocalDateTime.now());
-        quiz.setTimeLimit(30 * questionCount);
+        quiz.setTimeLimit(30 * generatedQuestions.size());
         quiz.setSequenceNumber(quizCount + 1);
-        quiz.setQuestionCount(questionCount);
+        quiz.setQuestionCount(generatedQuestions.size());
 
         Quiz savedQuiz = quizRepository.save(quiz);
 
-        List<QuizQuestion> generatedQuestions = huggingFaceService.generateQuizQuestions(
-                combinedText, questionCount, difficultyLevel);
-
         int qIndex = 0;
         for (QuizQuestion quizQuestion : generatedQuestions) {
             Question question = new Question();
@@ -114,6 +201,8 @@ public class QuizService {
             question.setType(Question.QuestionType.MULTIPLE_CHOICE);
             question.setExplanation(quizQuestion.getExplanation());
             question.setDifficultyLevel(difficultyLevel);
+            // 题目所在文本块的来源分段
+            question.setSources(new ArrayList<>(generation.getSources(qIndex - 1)));
 
             List<Option> optionList = new ArrayList<>();
             int optSeq = 0;
@@ -129,9 +218,25 @@ public class QuizService {
             question.setOptions(optionList);
             questionRepository.save(question);
         }
+        lectureVersionService.bump(lectureId);
         return savedQuiz;
     }
 
+    /**
+     * 选取出题用的文本块：有关注点时按相关度检索段落作为一块，否则（或无命中时）把全文切块
+     */
+    private List<ContentSegmentService.SourceText> selectSourceText(Lecture lecture, List<Content> contents,
+                                                                    String focus) {
+        if (focus != null && !focus.isBlank()) {
+            ContentSegmentService.SourceText passages =
+                    contentIndexService.retrievePassages(lecture.getId(), focus, MAX_PROMPT_CHARS);
+            if (!passages.getText().isBlank()) {
+                return List.of(passages);
+            }
+        }
+        return chunkedQuizGenerator.split(contents);
+    }
+
     /**
      * 发布测验
      */
@@ -142,11 +247,22 @@ public class QuizService {
         if (quiz.getStatus() != Quiz.QuizStatus.DRAFT) {
             throw new RuntimeException("只能发布处于草稿状态的测验");
         }
-        quiz.setStatus(Quiz.QuizStatus.PUBLISHED);
+        // 条件更新认领草稿，主讲人与自动流水线（或多个节点）同时发布时只有一方成功
+        if (quizRepository.updateStatusIfCurrent(
+                quizId, Quiz.QuizStatus.DRAFT, Quiz.QuizStatus.PUBLISHED, LocalDateTime.now()) == 0) {
+            throw new RuntimeException("只能发布处于草稿状态的测验");
+        }
+        // 条件更新会清空持久化上下文，重新加载后再写入发布信息
+        quiz = quizRepository.findById(quizId)
+                .orElseThrow(() -> new RuntimeException("测验不存在"));
         quiz.setPublishedAt(LocalDateTime.now());
         quiz.setTimeLimit(timeLimit);
         quiz.setUpdatedAt(LocalDateTime.now());
-        return quizRepository.save(quiz);
+        Quiz publishedQuiz = quizRepository.save(quiz);
+        lectureVersionService.bump(publishedQuiz.getLecture().getId());
+        // 事务提交后再预渲染听众视角的测验详情，回滚时不会留下已发布的缓存
+        afterCommit(() -> quizPayloadCache.render(publishedQuiz));
+        return publishedQuiz;
     }
 
     /**
@@ -163,10 +279,34 @@ public class QuizService {
         quiz.setExpiresAt(LocalDateTime.now().plusSeconds(quiz.getTimeLimit()));
         quiz.setUpdatedAt(LocalDateTime.now());
         Quiz activatedQuiz = quizRepository.save(quiz);
-        notificationService.broadcastQuizActivated(activatedQuiz);
+        lectureVersionService.bump(activatedQuiz.getLecture().getId());
+        // 提交后才通知听众和启动计时，避免听众先收到通知却读到未提交的状态
+        afterCommit(() -> {
+            // 在通知听众之前刷新缓存，激活瞬间的请求全部命中缓存
+            quizPayloadCache.render(activatedQuiz);
+            notificationService.broadcastQuizActivated(activatedQuiz);
+            quizCountdownService.start(activatedQuiz);
+            quizExpiryScheduler.schedule(activatedQuiz);
+        });
         return activatedQuiz;
     }
 
+    /**
+     * 在当前事务提交后执行；没有事务时立即执行
+     */
+    private void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
     /**
      * 提交测验答案
      */
@@ -277,18 +417,20 @@ public class QuizService {
     }
 
     /**
-     * 定时任务：检查并更新过期的测验
+     * 定时任务：兜底巡检过期的测验
+     * 正常情况下测验由 QuizExpiryScheduler 在到期时精确结束，这里只处理遗漏的情况
      */
-    @Scheduled(fixedRate = 10000)
-    @Transactional
+    @Scheduled(fixedDelayString = "${quiz.expiry-sweep-ms:60000}")
     public void checkAndExpireQuizzes() {
+        // 集群中只由持有锁的节点执行
+        if (!schedulerLockService.tryAcquire("quiz-expiry-sweep")) {
+            return;
+        }
         LocalDateTime now = LocalDateTime.now();
         List<Quiz> activeQuizzes = quizRepository.findByStatusAndExpiresAtBefore(
                 Quiz.QuizStatus.ACTIVE, now);
         for (Quiz quiz : activeQuizzes) {
-            quiz.setStatus(Quiz.QuizStatus.EXPIRED);
-            Quiz expiredQuiz = quizRepository.save(quiz);
-            notificationService.broadcastQuizExpired(expiredQuiz);
+            quizExpiryScheduler.expire(quiz.getId());
         }
     }
 
@@ -0,0 +1,98 @@
+package com.popquiz.service;
+
+import com.popquiz.repository.SchedulerLockRepository;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.net.InetAddress;
+import java.time.Duration;
+import java.util.UUID;
+
+/**
+ * 定时任务锁服务
+ * 基于数据库租约保证每个定时任务在集群中只由一个节点执行；
+ * 持有者按任务周期续约，节点宕机后最迟在租约到期时由其他节点接管；
+ * 租约时间以数据库时钟为准，不依赖各节点的本地时钟
+ */
+@Service
+public class SchedulerLockService {
+
+    private static final Logger logger = LoggerFactory.getLogger(SchedulerLockService.class);
+
+    private final SchedulerLockRepository schedulerLockRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final String nodeId;
+
+    // 默认租约时长，应大于使用该锁的任务周期，保证持有者能够连续续约
+    @Value("${scheduler.lock.lease-ms:90000}")
+    private long defaultLeaseMs;
+
+    public SchedulerLockService(
+            SchedulerLockRepository schedulerLockRepository,
+            PlatformTransactionManager transactionManager,
+            @Value("${scheduler.node-id:}") String configuredNodeId) {
+        this.schedulerLockRepository = schedulerLockRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        // 每次获取租约都在独立事务中提交，不受调用方事务影响
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.nodeId = configuredNodeId.isBlank() ? defaultNodeId() : configuredNodeId;
+    }
+
+    /**
+     * 尝试获取或续约任务锁，成功表示本节点可以执行该任务
+     */
+    public boolean tryAcquire(String name) {
+        return tryAcquire(name, Duration.ofMillis(defaultLeaseMs));
+    }
+
+    public boolean tryAcquire(String name, Duration lease) {
+        long leaseMs = lease.toMillis();
+        try {
+            Integer updated = transactionTemplate.execute(status ->
+                    schedulerLockRepository.acquireLease(name, nodeId, leaseMs));
+            if (updated != null && updated > 0) {
+                return true;
+            }
+            if (schedulerLockRepository.existsById(name)) {
+                return false;
+            }
+            transactionTemplate.execute(status -> schedulerLockRepository.insertLease(name, nodeId, leaseMs));
+            return true;
+        } catch (DataIntegrityViolationException e) {
+            // 其他节点同时创建了锁记录
+            return false;
+        } catch (Exception e) {
+            logger.warn("获取定时任务锁失败: name={}, {}", name, e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * 正常停机时释放租约，其他节点无需等待租约到期即可接管
+     */
+    @PreDestroy
+    public void releaseAll() {
+        try {
+            transactionTemplate.execute(status -> schedulerLockRepository.releaseAll(nodeId));
+        } catch (Exception e) {
+            logger.warn("释放定时任务锁失败: {}", e.getMessage());
+        }
+    }
+
+    private static String defaultNodeId() {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            host = "unknown";
+        }
+        return host + "-" + UUID.randomUUID().toString().substring(0, 8);
+    }
+}
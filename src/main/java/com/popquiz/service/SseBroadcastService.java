@@ -0,0 +1,213 @@
+package com.popquiz.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * SSE广播服务
+ * 为投影屏、大屏等只读客户端提供轻量的事件推送，
+ * 事件只编码一次，相同的字节写给该话题下的所有连接；
+ * 每个连接有自己的有界发送队列，队列写满或单次写入超时的慢客户端会被断开，不拖慢其他连接
+ */
+@Service
+public class SseBroadcastService {
+
+    private static final Logger logger = LoggerFactory.getLogger(SseBroadcastService.class);
+    private static final byte[] HEARTBEAT_FRAME = ":heartbeat\n\n".getBytes(StandardCharsets.UTF_8);
+
+    private final ObjectMapper objectMapper;
+
+    // 话题 -> 订阅该话题的SSE连接，话题名与STOMP话题保持一致（如 lecture.1、quiz.2.statistics）
+    private final Map<String, List<Subscriber>> emitters = new ConcurrentHashMap<>();
+
+    // 写连接在独立线程池上进行，慢客户端不会阻塞发布通知的业务线程
+    private final ExecutorService fanOutExecutor;
+
+    @Value("${sse.emitter-timeout-ms:0}")
+    private long emitterTimeoutMs;
+
+    // 每个连接最多积压的事件数，超出即视为慢客户端
+    @Value("${sse.max-queued-frames:64}")
+    private int maxQueuedFrames;
+
+    // 单次写入超过该时间的连接被断开
+    @Value("${sse.write-timeout-ms:10000}")
+    private long writeTimeoutMs;
+
+    public SseBroadcastService(ObjectMapper objectMapper,
+                               @Value("${sse.fan-out-threads:4}") int fanOutThreads) {
+        this.objectMapper = objectMapper;
+        this.fanOutExecutor = Executors.newFixedThreadPool(fanOutThreads, r -> {
+            Thread thread = new Thread(r, "sse-fan-out");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 订阅话题，返回的连接由控制器直接交给Spring MVC
+     */
+    public ResponseBodyEmitter subscribe(String topic) {
+        ResponseBodyEmitter emitter = new ResponseBodyEmitter(emitterTimeoutMs);
+        Subscriber subscriber = new Subscriber(topic, emitter, maxQueuedFrames);
+        emitters.computeIfAbsent(topic, k -> new CopyOnWriteArrayList<>()).add(subscriber);
+
+        Runnable remove = () -> removeSubscriber(subscriber);
+        emitter.onCompletion(remove);
+        emitter.onTimeout(remove);
+        emitter.onError(e -> remove.run());
+        return emitter;
+    }
+
+    /**
+     * 向话题的所有SSE连接发布事件
+     */
+    public void publish(String topic, String type, Object payload) {
+        List<Subscriber> subscribers = emitters.get(topic);
+        if (subscribers == null || subscribers.isEmpty()) {
+            return;
+        }
+        byte[] frame;
+        try {
+            frame = ("event:" + type + "\ndata:" + objectMapper.writeValueAsString(payload) + "\n\n")
+                    .getBytes(StandardCharsets.UTF_8);
+        } catch (Exception e) {
+            logger.error("SSE事件编码失败: topic={}, type={}", topic, type, e);
+            return;
+        }
+        subscribers.forEach(subscriber -> enqueue(subscriber, frame));
+    }
+
+    /**
+     * 定时发送心跳，保持代理连接并及时清理已断开的客户端
+     */
+    @Scheduled(fixedRate = 30000)
+    public void sendHeartbeats() {
+        emitters.values().forEach(subscribers -> subscribers.forEach(subscriber -> enqueue(subscriber, HEARTBEAT_FRAME)));
+    }
+
+    /**
+     * 断开写入卡住的连接：结束响应后阻塞的写入会以异常返回，释放发送线程
+     */
+    @Scheduled(fixedRate = 5000)
+    public void dropStalledSubscribers() {
+        long now = System.currentTimeMillis();
+        emitters.values().forEach(subscribers -> subscribers.forEach(subscriber -> {
+            long startedAt = subscriber.sendStartedAt;
+            if (startedAt > 0 && now - startedAt > writeTimeoutMs) {
+                logger.info("SSE连接写入超时，断开: topic={}", subscriber.topic);
+                drop(subscriber);
+            }
+        }));
+    }
+
+    public int getSubscriberCount(String topic) {
+        List<Subscriber> subscribers = emitters.get(topic);
+        return subscribers == null ? 0 : subscribers.size();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        fanOutExecutor.shutdownNow();
+        emitters.values().forEach(list -> list.forEach(subscriber -> subscriber.emitter.complete()));
+        emitters.clear();
+    }
+
+    /**
+     * 放入连接的发送队列；队列已满说明客户端跟不上，直接断开。
+     * 同一连接同时只有一个发送任务，保证事件按顺序写出
+     */
+    private void enqueue(Subscriber subscriber, byte[] frame) {
+        if (subscriber.closed.get()) {
+            return;
+        }
+        if (!subscriber.queue.offer(frame)) {
+            logger.info("SSE连接积压过多，断开: topic={}", subscriber.topic);
+            drop(subscriber);
+            return;
+        }
+        if (subscriber.draining.compareAndSet(false, true)) {
+            fanOutExecutor.execute(() -> drain(subscriber));
+        }
+    }
+
+    private void drain(Subscriber subscriber) {
+        while (true) {
+            byte[] frame;
+            while ((frame = subscriber.queue.poll()) != null) {
+                if (subscriber.closed.get()) {
+                    subscriber.queue.clear();
+                    break;
+                }
+                subscriber.sendStartedAt = System.currentTimeMillis();
+                try {
+                    subscriber.emitter.send(frame, MediaType.TEXT_EVENT_STREAM);
+                } catch (Exception e) {
+                    logger.debug("SSE连接已断开: topic={}", subscriber.topic);
+                    removeSubscriber(subscriber);
+                } finally {
+                    subscriber.sendStartedAt = 0;
+                }
+            }
+            subscriber.draining.set(false);
+            // 释放标志后再检查一次，避免漏掉期间新入队的事件
+            if (subscriber.queue.isEmpty() || !subscriber.draining.compareAndSet(false, true)) {
+                return;
+            }
+        }
+    }
+
+    private void drop(Subscriber subscriber) {
+        removeSubscriber(subscriber);
+        try {
+            subscriber.emitter.completeWithError(new IllegalStateException("SSE客户端过慢"));
+        } catch (Exception e) {
+            logger.debug("关闭SSE连接失败: topic={}", subscriber.topic);
+        }
+    }
+
+    private void removeSubscriber(Subscriber subscriber) {
+        subscriber.closed.set(true);
+        emitters.computeIfPresent(subscriber.topic, (k, list) -> {
+            list.remove(subscriber);
+            return list.isEmpty() ? null : list;
+        });
+    }
+
+    /**
+     * 一个SSE连接及其发送队列
+     */
+    private static class Subscriber {
+        private final String topic;
+        private final ResponseBodyEmitter emitter;
+        private final Queue<byte[]> queue;
+        private final AtomicBoolean draining = new AtomicBoolean();
+        private final AtomicBoolean closed = new AtomicBoolean();
+        // 当前写入开始的时间，0表示没有进行中的写入
+        private volatile long sendStartedAt;
+
+        Subscriber(String topic, ResponseBodyEmitter emitter, int maxQueuedFrames) {
+            this.topic = topic;
+            this.emitter = emitter;
+            this.queue = new ArrayBlockingQueue<>(Math.max(1, maxQueuedFrames));
+        }
+    }
+}
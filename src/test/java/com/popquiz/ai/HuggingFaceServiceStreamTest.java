@@ -0,0 +1,137 @@
+package com.popquiz.ai;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HuggingFaceServiceStreamTest {
+
+    private static final String MODEL_OUTPUT = """
+            ```json
+            {"questions": [
+              {"content": "JSON中 \\"{\\" 需要转义吗？", "options": [
+                {"label": "A", "content": "需要]", "isCorrect": false},
+                {"label": "B", "content": "不需要，反斜杠\\\\只用于转义", "isCorrect": true}
+              ], "explanation": "字符串内的 } 和 ] 不会结束对象"},
+              {"content": "第二题", "options": [
+                {"label": "A", "content": "甲", "isCorrect": true},
+                {"label": "B", "content": "乙", "isCorrect": false}
+              ], "explanation": "无"}
+            ]}
+            ```""";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private MockWebServer server;
+    private LlmClient llmClient;
+    private HuggingFaceService service;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = new MockWebServer();
+        server.start();
+        llmClient = new LlmClient(new SimpleMeterRegistry(), 2, 2, 60_000, 5_000, 5_000);
+        ReflectionTestUtils.setField(llmClient, "maxPending", 4);
+        ReflectionTestUtils.setField(llmClient, "breakerFailureThreshold", 5);
+        ReflectionTestUtils.setField(llmClient, "breakerOpenMs", 1_000L);
+        service = new HuggingFaceService(llmClient);
+        ReflectionTestUtils.setField(service, "apiToken", "test-token");
+        ReflectionTestUtils.setField(service, "modelEndpoint", server.url("/v1/chat/completions").toString());
+        ReflectionTestUtils.setField(service, "modelName", "test-model");
+        ReflectionTestUtils.setField(service, "stream", true);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        llmClient.shutdown();
+        server.shutdown();
+    }
+
+    @Test
+    void parsesQuestionsSplitAcrossStreamEvents() throws Exception {
+        // 每个事件只带3个字符，切分点落在字符串和转义序列中间；响应体再按小块写出，行也会被拆开
+        StringBuilder body = new StringBuilder();
+        for (int start = 0; start < MODEL_OUTPUT.length(); start += 3) {
+            body.append(event(MODEL_OUTPUT.substring(start, Math.min(MODEL_OUTPUT.length(), start + 3))));
+        }
+        body.append(": keep-alive\n\n");
+        body.append("data: [DONE]\n\n");
+        // [DONE] 之后的内容不再读取，否则这里会解析失败
+        body.append("data: not json\n\n");
+        server.enqueue(new MockResponse()
+                .setHeader("Content-Type", "text/event-stream")
+                .setBody(body.toString())
+                .throttleBody(64, 1, TimeUnit.MILLISECONDS));
+
+        List<QuizQuestion> streamed = new CopyOnWriteArrayList<>();
+        List<QuizQuestion> questions = service.generateQuizQuestionsAsync("讲座内容", 2, 3, streamed::add)
+                .get(10, TimeUnit.SECONDS);
+
+        assertEquals(2, questions.size());
+        assertEquals("JSON中 \"{\" 需要转义吗？", questions.get(0).getContent());
+        assertEquals("不需要，反斜杠\\只用于转义", questions.get(0).getOptions().get(1).getContent());
+        assertTrue(questions.get(0).getOptions().get(1).isCorrect());
+        assertEquals("字符串内的 } 和 ] 不会结束对象", questions.get(0).getExplanation());
+        assertEquals("第二题", questions.get(1).getContent());
+        assertEquals(questions, streamed);
+
+        RecordedRequest request = server.takeRequest(5, TimeUnit.SECONDS);
+        assertEquals("text/event-stream", request.getHeader("Accept"));
+        assertEquals("Bearer test-token", request.getHeader("Authorization"));
+        assertTrue(objectMapper.readTree(request.getBody().readUtf8()).path("stream").asBoolean());
+    }
+
+    @Test
+    void fallsBackToPlainJsonWhenServerDoesNotStream() throws Exception {
+        ObjectNode root = objectMapper.createObjectNode();
+        root.putArray("choices").addObject().putObject("message").put("content", MODEL_OUTPUT);
+        server.enqueue(new MockResponse()
+                .setHeader("Content-Type", "application/json")
+                .setBody(root.toString()));
+
+        List<QuizQuestion> streamed = new CopyOnWriteArrayList<>();
+        List<QuizQuestion> questions = service.generateQuizQuestionsAsync("讲座内容", 2, 3, streamed::add)
+                .get(10, TimeUnit.SECONDS);
+
+        assertEquals(2, questions.size());
+        assertEquals("第二题", questions.get(1).getContent());
+        assertEquals(questions, streamed);
+    }
+
+    @Test
+    void parsesFullTextWhenIncrementalParsingFindsNothing() throws Exception {
+        // 开头的说明文字里出现了 "questions" [...]，增量解析提前结束；流结束后按完整文本再解析
+        String output = "按 \"questions\" [题目数组] 输出：\n" + MODEL_OUTPUT;
+        server.enqueue(new MockResponse()
+                .setHeader("Content-Type", "text/event-stream")
+                .setBody(event(output) + "data: [DONE]\n\n"));
+
+        List<QuizQuestion> streamed = new CopyOnWriteArrayList<>();
+        List<QuizQuestion> questions = service.generateQuizQuestionsAsync("讲座内容", 2, 3, streamed::add)
+                .get(10, TimeUnit.SECONDS);
+
+        assertEquals(2, questions.size());
+        assertEquals("第二题", questions.get(1).getContent());
+        assertEquals(questions, streamed);
+    }
+
+    private String event(String content) {
+        ObjectNode root = objectMapper.createObjectNode();
+        root.putArray("choices").addObject().putObject("delta").put("content", content);
+        return "data: " + root + "\n\n";
+    }
+}
@@ -0,0 +1,48 @@
+package com.popquiz.ai;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StreamingQuestionParserTest {
+
+    private static final String FIRST = "{\"content\": \"表达式 \\\"{}\\\" 的含义？\", "
+            + "\"options\": [{\"label\": \"A\", \"content\": \"空对象 ]\", \"isCorrect\": true}], "
+            + "\"explanation\": \"反斜杠\\\\后的引号\\\\\\\"仍在字符串内\"}";
+    private static final String SECOND = "{\"content\": \"第二题}\", \"options\": [], \"explanation\": \"{[\"}";
+    private static final String TEXT = "```json\n{\"questions\": [\n  " + FIRST + ",\n  " + SECOND
+            + "\n]}\n```";
+
+    @Test
+    void emitsEachObjectOnceRegardlessOfChunkBoundaries() {
+        // 依次尝试各种切分长度，切分点会落在字符串内部和转义序列中间
+        for (int size = 1; size <= TEXT.length(); size++) {
+            StreamingQuestionParser parser = new StreamingQuestionParser();
+            List<String> objects = new ArrayList<>();
+            for (int start = 0; start < TEXT.length(); start += size) {
+                objects.addAll(parser.append(TEXT.substring(start, Math.min(TEXT.length(), start + size))));
+            }
+            assertEquals(List.of(FIRST, SECOND), objects, "chunk size " + size);
+            assertEquals(TEXT, parser.getText());
+        }
+    }
+
+    @Test
+    void emitsObjectAsSoonAsItCloses() {
+        StreamingQuestionParser parser = new StreamingQuestionParser();
+        assertTrue(parser.append("{\"ques").isEmpty());
+        assertTrue(parser.append("tions\": [" + FIRST.substring(0, 10)).isEmpty());
+        assertEquals(List.of(FIRST), parser.append(FIRST.substring(10) + ", {\"content\""));
+    }
+
+    @Test
+    void ignoresObjectsAfterArrayEnds() {
+        StreamingQuestionParser parser = new StreamingQuestionParser();
+        assertEquals(List.of(SECOND), parser.append("{\"questions\": [" + SECOND + "], \"extra\": "));
+        assertTrue(parser.append("{\"content\": \"x\"}}").isEmpty());
+    }
+}
@@ -0,0 +1,46 @@
+package com.popquiz.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class ChunkedQuizGeneratorTest {
+
+    @Test
+    void mergeKeepsEveryChunkWhenThereAreMoreThanTheLimit() {
+        List<ContentSegmentService.SourceText> chunks = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            // 长短不一的块，合并时按文本量分组
+            chunks.add(new ContentSegmentService.SourceText("第" + i + "段" + "内容".repeat(10 + (i % 3) * 40), List.of()));
+        }
+
+        List<ContentSegmentService.SourceText> merged = ChunkedQuizGenerator.merge(chunks, 8);
+
+        assertEquals(8, merged.size());
+        // 按顺序拼接回来与原文一致：每块都出现且只出现一次
+        StringBuilder expected = new StringBuilder();
+        for (ContentSegmentService.SourceText chunk : chunks) {
+            expected.append(chunk.getText());
+        }
+        StringBuilder actual = new StringBuilder();
+        for (ContentSegmentService.SourceText group : merged) {
+            assertFalse(group.getText().isEmpty());
+            actual.append(group.getText().replace("\n\n", ""));
+        }
+        assertEquals(expected.toString(), actual.toString());
+    }
+
+    @Test
+    void mergeLeavesChunksUnderTheLimitUntouched() {
+        List<ContentSegmentService.SourceText> chunks = List.of(
+                new ContentSegmentService.SourceText("甲", List.of()),
+                new ContentSegmentService.SourceText("乙", List.of()));
+
+        assertSame(chunks, ChunkedQuizGenerator.merge(chunks, 3));
+    }
+}
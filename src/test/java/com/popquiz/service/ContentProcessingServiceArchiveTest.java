@@ -0,0 +1,115 @@
+package com.popquiz.service;
+
+import com.popquiz.model.Content;
+import com.popquiz.model.Lecture;
+import com.popquiz.repository.ContentRepository;
+import com.popquiz.repository.QuestionRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ContentProcessingServiceArchiveTest {
+
+    private static final int ENTRIES = 150;
+    private static final int QUEUE_CAPACITY = 2;
+
+    private final ContentRepository contentRepository = mock(ContentRepository.class);
+    private final ContentStorageService contentStorageService = mock(ContentStorageService.class);
+    private final AtomicLong ids = new AtomicLong();
+    private final Set<Long> claimed = ConcurrentHashMap.newKeySet();
+    private ContentIngestionExecutor executor;
+    private ContentProcessingService service;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        executor = new ContentIngestionExecutor(1, QUEUE_CAPACITY);
+        service = new ContentProcessingService(contentRepository, contentStorageService,
+                mock(LectureVersionService.class), executor, mock(NotificationService.class),
+                mock(PdfTextExtractor.class), mock(PowerPointTextExtractor.class),
+                mock(ContentSegmentService.class), mock(ContentIndexService.class),
+                mock(QuestionRepository.class), mock(IngestionMetrics.class),
+                mock(ContentNormalizationService.class), mock(SchedulerLockService.class));
+        ReflectionTestUtils.setField(service, "archiveCharset", "UTF-8");
+        ReflectionTestUtils.setField(service, "archiveMaxEntries", 200);
+        ReflectionTestUtils.setField(service, "archiveMaxBytes", 1L << 30);
+        ReflectionTestUtils.setField(service, "archiveMaxInFlight", 4);
+
+        when(contentStorageService.store(any(InputStream.class))).thenAnswer(invocation ->
+                new ContentStorageService.StoredFile(Paths.get("blob"), "hash" + ids.get(), 1, false));
+        when(contentRepository.save(any(Content.class))).thenAnswer(invocation -> {
+            Content content = invocation.getArgument(0);
+            if (content.getId() == null) {
+                content.setId(ids.incrementAndGet());
+            }
+            return content;
+        });
+        // 处理线程认领后查不到记录即结束，只关心条目是否都被提交处理
+        when(contentRepository.claimForProcessing(anyLong(), eq(Content.ProcessStatus.PENDING),
+                eq(Content.ProcessStatus.PROCESSING), any())).thenAnswer(invocation -> {
+            Thread.sleep(2);
+            claimed.add(invocation.getArgument(0));
+            return 1;
+        });
+        when(contentRepository.findById(anyLong())).thenReturn(Optional.empty());
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdown();
+    }
+
+    @Test
+    void archiveLargerThanQueueIsFedWithoutRejectingEntries() throws Exception {
+        Lecture lecture = new Lecture();
+        lecture.setId(1L);
+        lecture.setStatus(Lecture.LectureStatus.SCHEDULED);
+
+        ContentProcessingService.ArchiveBatch batch = service.processArchiveUpload(
+                new MockMultipartFile("file", "slides.zip", "application/zip", zip(ENTRIES)), lecture);
+
+        assertEquals(ENTRIES, batch.getContentIds().size());
+        assertNull(batch.getError());
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!batch.isDone() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(batch.isDone());
+        // 每个条目都由处理线程认领过，没有因为队列已满而被标记为失败
+        assertEquals(ENTRIES, claimed.size());
+        assertTrue(executor.getQueueSize() <= QUEUE_CAPACITY);
+    }
+
+    private byte[] zip(int entries) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(bytes, StandardCharsets.UTF_8)) {
+            for (int i = 0; i < entries; i++) {
+                zip.putNextEntry(new ZipEntry("week" + i + ".txt"));
+                zip.write(("第" + i + "周讲义").getBytes(StandardCharsets.UTF_8));
+                zip.closeEntry();
+            }
+        }
+        return bytes.toByteArray();
+    }
+}